@@ -2,6 +2,8 @@ package com.comfortanalytics.aon;
 
 import com.comfortanalytics.aon.io.AonReader;
 import com.comfortanalytics.aon.io.AonWriter;
+import com.comfortanalytics.aon.io.IndexedFile;
+import com.comfortanalytics.aon.io.IndexedFileWriter;
 import com.comfortanalytics.aon.json.JsonReader;
 import com.comfortanalytics.aon.json.JsonWriter;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,16 +12,22 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.owlike.genson.Genson;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.json.simple.JSONValue;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 
 /**
  * Benchmarks various formats and 3rd party libs.
@@ -37,6 +45,7 @@ public class AonBenchmark {
     private static final Aobj aobjLarge;
     private static final Aobj aobjSmall;
     private static final byte[] aonLarge;
+    private static final byte[] aonLargeKeyed;
     private static final byte[] aonSmall;
     private static final byte[] jsonLarge;
     private static final byte[] jsonSmall;
@@ -53,6 +62,9 @@ public class AonBenchmark {
         aobjSmall = makeSmallObj();
         aobjLarge = makeLargeObj();
         aonLarge = Aon.aonBytes(aobjLarge);
+        AonWriter keyed = new AonWriter().setKeyTable(true);
+        keyed.value(aobjLarge);
+        aonLargeKeyed = keyed.toByteArray();
         aonSmall = Aon.aonBytes(aobjSmall);
         jsonLarge = Aon.jsonBytes(aobjLarge);
         jsonSmall = Aon.jsonBytes(aobjSmall);
@@ -63,6 +75,7 @@ public class AonBenchmark {
         System.out.println("   JSON small doc size: " + msgPackSmall.length);
         System.out.println("MsgPack small doc size: " + jsonSmall.length);
         System.out.println("    AON large doc size: " + aonLarge.length);
+        System.out.println("AON keyed large doc size: " + aonLargeKeyed.length);
         System.out.println("   JSON large doc size: " + jsonLarge.length);
         System.out.println("MsgPack large doc size: " + msgPackLarge.length);
         */
@@ -188,11 +201,21 @@ public class AonBenchmark {
             return Aon.aonReader(new ByteArrayInputStream(aonLarge)).getValue();
         }
 
+        @Benchmark
+        public Object AonBytes() {
+            return Aon.aonReader(aonLarge).getValue();
+        }
+
         @Benchmark
         public Object AonJson() {
             return Aon.jsonReader(new ByteArrayInputStream(jsonLarge)).getValue();
         }
 
+        @Benchmark
+        public Object AonKeyTable() {
+            return Aon.aonReader(aonLargeKeyed).getValue();
+        }
+
         @Benchmark
         public Object AonMsgPack() {
             return Aon.msgPackReader(new ByteArrayInputStream(msgPackLarge)).getValue();
@@ -230,6 +253,66 @@ public class AonBenchmark {
 
     }
 
+    /**
+     * Many records sharing the same keys.  Run with -prof gc and compare gc.alloc.rate.norm to see
+     * the heap saved by canonicalizing keys with a SymbolTable.
+     */
+    @State(Scope.Benchmark)
+    public static class DecodeRecords {
+
+        private byte[] aon;
+        private byte[] json;
+        private byte[] msgPack;
+
+        @Benchmark
+        public Object Aon() {
+            return Aon.aonReader(aon).getValue();
+        }
+
+        @Benchmark
+        public Object AonNoSymbols() {
+            return Aon.aonReader(aon).setSymbolTable(null).getValue();
+        }
+
+        @Benchmark
+        public Object AonJson() {
+            return Aon.jsonReader(json).getValue();
+        }
+
+        @Benchmark
+        public Object AonJsonNoSymbols() {
+            return ((AbstractReader) Aon.jsonReader(json)).setSymbolTable(null).getValue();
+        }
+
+        @Benchmark
+        public Object AonMsgPack() {
+            return Aon.msgPackReader(new ByteArrayInputStream(msgPack)).getValue();
+        }
+
+        @Benchmark
+        public Object AonMsgPackNoSymbols() {
+            return Aon.msgPackReader(new ByteArrayInputStream(msgPack))
+                      .setSymbolTable(null)
+                      .getValue();
+        }
+
+        @Setup
+        public void start() {
+            Alist records = new Alist();
+            for (int i = 0; i < 10000; i++) {
+                Aobj record = new Aobj();
+                for (int j = 0; j < 30; j++) {
+                    record.put("field" + j, i + j);
+                }
+                records.add(record);
+            }
+            aon = Aon.aonBytes(records);
+            json = Aon.jsonBytes(records);
+            msgPack = Aon.msgPackBytes(records);
+        }
+
+    }
+
     @State(Scope.Benchmark)
     public static class DecodeSmallDoc {
 
@@ -238,6 +321,11 @@ public class AonBenchmark {
             return Aon.aonReader(new ByteArrayInputStream(aonSmall)).getValue();
         }
 
+        @Benchmark
+        public Object AonBytes() {
+            return Aon.aonReader(aonSmall).getValue();
+        }
+
         @Benchmark
         public Object AonJson() {
             return Aon.jsonReader(new ByteArrayInputStream(jsonSmall)).getValue();
@@ -298,6 +386,11 @@ public class AonBenchmark {
             Aon.jsonWriter(nullWriter).value(aobjLarge);
         }
 
+        @Benchmark
+        public void AonKeyTable() {
+            Aon.aonWriter(nullOutputStream).setKeyTable(true).value(aobjLarge);
+        }
+
         @Benchmark
         public void AonMsgPack() {
             Aon.msgPackWriter(nullOutputStream).value(aobjLarge);
@@ -415,6 +508,278 @@ public class AonBenchmark {
 
     }
 
+    /**
+     * Throughput of decoding a stream of records as the number of threads increases.  A thread
+     * count of 1 is the baseline to compare the others against.
+     */
+    /**
+     * Finding one document in a large collection, with an indexed file versus decoding the
+     * collection as one object.
+     */
+    @State(Scope.Benchmark)
+    public static class IndexedLookup {
+
+        private static final int SIZE = 10000;
+        private File file;
+        private IndexedFile indexed;
+        private File whole;
+
+        @Benchmark
+        public Object Indexed() {
+            return indexed.get("key" + (SIZE / 2));
+        }
+
+        @Setup
+        public void setup() throws IOException {
+            file = File.createTempFile("aon", ".aoni");
+            whole = File.createTempFile("aon", ".aon");
+            Aobj all = new Aobj();
+            try (IndexedFileWriter out = new IndexedFileWriter(file)) {
+                for (int i = 0; i < SIZE; i++) {
+                    out.put("key" + i, aobjSmall);
+                    all.put("key" + i, aobjSmall);
+                }
+            }
+            Aon.writeAon(all, whole);
+            indexed = new IndexedFile(file);
+        }
+
+        @TearDown
+        public void tearDown() {
+            indexed.close();
+            file.delete();
+            whole.delete();
+        }
+
+        @Benchmark
+        public Object Whole() {
+            Aobj all = Aon.readAon(whole);
+            return all.get("key" + (SIZE / 2));
+        }
+
+    }
+
+    /**
+     * A waveform, a list of doubles.
+     */
+    @State(Scope.Benchmark)
+    public static class PackedDoubles {
+
+        private final Alist samples = new Alist(Atype.DOUBLE);
+        private byte[] aon;
+        private byte[] msgPack;
+
+        @Setup
+        public void setup() {
+            for (int i = 0; i < 10000; i++) {
+                samples.add(Math.sin(i / 100d));
+            }
+            aon = Aon.aonBytes(new Alist().add(samples));
+            msgPack = Aon.msgPackBytes(new Alist().add(samples));
+        }
+
+        @Benchmark
+        public Object DecodeAon() {
+            return Aon.readAon(aon);
+        }
+
+        @Benchmark
+        public Object DecodeMsgPack() {
+            return Aon.readMsgPack(msgPack);
+        }
+
+        @Benchmark
+        public void EncodeAon() {
+            Aon.aonWriter(nullOutputStream).value(samples);
+        }
+
+        @Benchmark
+        public void EncodeMsgPack() {
+            Aon.msgPackWriter(nullOutputStream).value(samples);
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class ParallelRecords {
+
+        @Param({"1", "2", "4", "8", "16", "32"})
+        private int threads;
+
+        private byte[] aon;
+        private ExecutorService executor;
+        private byte[] json;
+        private byte[] msgPack;
+
+        @Benchmark
+        public long Aon() {
+            return decode(ParallelRecordReader.aon(aon));
+        }
+
+        @Benchmark
+        public long AonJson() {
+            return decode(ParallelRecordReader.json(json));
+        }
+
+        @Benchmark
+        public long AonJsonUnordered() {
+            return decode(ParallelRecordReader.json(json).setOrdered(false));
+        }
+
+        @Benchmark
+        public long AonMsgPack() {
+            return decode(ParallelRecordReader.msgPack(msgPack));
+        }
+
+        @Setup
+        public void start() {
+            executor = Executors.newFixedThreadPool(threads);
+            ByteArrayOutputStream aonOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream jsonOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream msgPackOut = new ByteArrayOutputStream();
+            RecordWriter[] writers = new RecordWriter[]{
+                    new RecordWriter(Aon.aonWriter(aonOut)),
+                    new RecordWriter(Aon.jsonWriter(jsonOut)),
+                    new RecordWriter(Aon.msgPackWriter(msgPackOut))};
+            Aobj record = makeObj();
+            for (int i = 0; i < 100000; i++) {
+                record.put("id", i);
+                for (RecordWriter writer : writers) {
+                    writer.write(record);
+                }
+            }
+            for (RecordWriter writer : writers) {
+                writer.close();
+            }
+            aon = aonOut.toByteArray();
+            json = jsonOut.toByteArray();
+            msgPack = msgPackOut.toByteArray();
+        }
+
+        @TearDown
+        public void stop() {
+            executor.shutdown();
+        }
+
+        private long decode(ParallelRecordReader reader) {
+            long[] count = new long[1];
+            reader.setExecutor(executor).setParallelism(threads * 2).forEach(rec -> count[0]++);
+            return count[0];
+        }
+
+    }
+
+    /**
+     * Compares decoding a few paths from the large document to decoding all of it.
+     */
+    @State(Scope.Benchmark)
+    public static class ProjectLargeDoc {
+
+        private final Projection projection = new Projection(
+                "object.object5.string",
+                "object.list50",
+                "object150.int1234",
+                "object150.list",
+                "object199.object.dblMax");
+        private byte[] aonSized;
+
+        @Setup
+        public void setup() {
+            AonWriter writer = new AonWriter().setGroupLengths(true);
+            writer.value(aobjLarge);
+            aonSized = writer.toByteArray();
+        }
+
+        @Benchmark
+        public Object Aon() {
+            return Aon.readAon(aonLarge);
+        }
+
+        @Benchmark
+        public Object AonJson() {
+            return Aon.readJson(jsonLarge);
+        }
+
+        @Benchmark
+        public Object AonJsonProjected() {
+            return Aon.readJson(jsonLarge, projection);
+        }
+
+        @Benchmark
+        public Object AonMsgPack() {
+            return Aon.readMsgPack(msgPackLarge);
+        }
+
+        @Benchmark
+        public Object AonMsgPackProjected() {
+            return Aon.readMsgPack(msgPackLarge, projection);
+        }
+
+        @Benchmark
+        public Object AonProjected() {
+            return Aon.readAon(aonLarge, projection);
+        }
+
+        @Benchmark
+        public Object AonSizedProjected() {
+            return Aon.readAon(aonSized, projection);
+        }
+
+    }
+
+    /**
+     * Converting between formats by decoding a tree, versus token by token.
+     */
+    @State(Scope.Benchmark)
+    public static class TranscodeLargeDoc {
+
+        @Benchmark
+        public Object AonToJson() {
+            AbstractWriter out = Aon.jsonWriter(nullOutputStream);
+            out.value(Aon.readAon(aonLarge)).flush();
+            return out;
+        }
+
+        @Benchmark
+        public Object AonToJsonStreamed() {
+            AbstractWriter out = Aon.jsonWriter(nullOutputStream);
+            Aon.transcode(Aon.aonReader(aonLarge), out);
+            out.flush();
+            return out;
+        }
+
+        @Benchmark
+        public Object JsonToMsgPack() {
+            AbstractWriter out = Aon.msgPackWriter(nullOutputStream);
+            out.value(Aon.readJson(jsonLarge)).flush();
+            return out;
+        }
+
+        @Benchmark
+        public Object JsonToMsgPackStreamed() {
+            AbstractWriter out = Aon.msgPackWriter(nullOutputStream);
+            Aon.transcode(Aon.jsonReader(jsonLarge), out);
+            out.flush();
+            return out;
+        }
+
+        @Benchmark
+        public Object MsgPackToAon() {
+            AbstractWriter out = Aon.aonWriter(nullOutputStream);
+            out.value(Aon.readMsgPack(msgPackLarge)).flush();
+            return out;
+        }
+
+        @Benchmark
+        public Object MsgPackToAonStreamed() {
+            AbstractWriter out = Aon.aonWriter(nullOutputStream);
+            Aon.transcode(Aon.msgPackReader(msgPackLarge), out);
+            out.flush();
+            return out;
+        }
+
+    }
+
     private static class NullOutputStream extends OutputStream {
 
         @Override
@@ -2,9 +2,18 @@ package com.comfortanalytics.aon;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 /**
  * Basic implementation of Areader.  Subclasses must implement the next() method.
+ * <p>
+ * Tracks whether the next token is an object key, so that subclasses can canonicalize keys with
+ * the SymbolTable returned by nextSymbols().
+ * <p>
+ * When lazy, getList and getObj ask the subclass to skip nested groups rather than decode them,
+ * and the groups are decoded on first access.  Only subclasses that can re-read their input,
+ * such as those decoding a byte array, support this.
  *
  * @author Aaron Hansen
  * @see #next()
@@ -16,7 +25,15 @@ public abstract class AbstractReader implements Areader {
     // Instance Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private boolean[] containers = new boolean[16];
+    private int depth;
+    private boolean inObj;
+    private boolean keyNext;
     private Token last = Token.ROOT;
+    private boolean lazy;
+    private boolean symbolValues;
+    private SymbolTable symbols;
+    private boolean symbolsDisabled;
     private BigInteger valBigint;
     private byte[] valBinary;
     private boolean valBoolean;
@@ -230,8 +247,12 @@ public abstract class AbstractReader implements Areader {
                 throw new IllegalStateException("Not a list");
             }
         }
-        Alist ret = new Alist();
+        //typed by the first value, so homogeneous primitive lists are stored unboxed
+        Alist ret = new Alist(ListStore.PENDING);
         while (true) {
+            if (addPacked(ret)) {
+                continue;
+            }
             switch (next()) {
                 case END_INPUT:
                     throw new IllegalStateException("Unexpected end of input");
@@ -264,10 +285,10 @@ public abstract class AbstractReader implements Areader {
                     ret.add(valLong);
                     break;
                 case BEGIN_LIST:
-                    ret.add(getList());
+                    ret.add(nestedList());
                     break;
                 case BEGIN_OBJ:
-                    ret.add(getObj());
+                    ret.add(nestedObj());
                     break;
                 case NULL:
                     ret.addNull();
@@ -281,6 +302,28 @@ public abstract class AbstractReader implements Areader {
         }
     }
 
+    /**
+     * Decodes only the selected parts of the list, everything else is skipped without being
+     * decoded.  Paths must begin with [*] to select elements of the list.
+     *
+     * @param projection Null decodes the entire list.
+     */
+    public Alist getList(Projection projection) {
+        if (projection == null) {
+            return getList();
+        }
+        if (last != Token.BEGIN_LIST) {
+            if (last == Token.ROOT) {
+                next();
+            } else if (last == Token.NULL) {
+                return null;
+            } else {
+                throw new IllegalStateException("Not a list");
+            }
+        }
+        return projectList(projection.getRoot());
+    }
+
     @Override
     public long getLong() {
         if (last == Token.LONG) {
@@ -362,10 +405,10 @@ public abstract class AbstractReader implements Areader {
                     ret.put(key, Along.valueOf(valLong));
                     break;
                 case BEGIN_LIST:
-                    ret.put(key, getList());
+                    ret.put(key, nestedList());
                     break;
                 case BEGIN_OBJ:
-                    ret.put(key, getObj());
+                    ret.put(key, nestedObj());
                     break;
                 case NULL:
                     ret.putNull(key);
@@ -379,6 +422,28 @@ public abstract class AbstractReader implements Areader {
         }
     }
 
+    /**
+     * Decodes only the selected members of the object, everything else is skipped without being
+     * decoded.
+     *
+     * @param projection Null decodes the entire object.
+     */
+    public Aobj getObj(Projection projection) {
+        if (projection == null) {
+            return getObj();
+        }
+        if (last != Token.BEGIN_OBJ) {
+            if (last == Token.ROOT) {
+                next();
+            } else if (last == Token.NULL) {
+                return null;
+            } else {
+                throw new IllegalStateException("Not a object");
+            }
+        }
+        return projectObj(projection.getRoot());
+    }
+
     @Override
     public String getString() {
         if (last == Token.STRING) {
@@ -410,6 +475,17 @@ public abstract class AbstractReader implements Areader {
         }
     }
 
+    /**
+     * The table used to canonicalize strings, or null if disabled.  Unless one has been set, each
+     * reader creates its own.
+     */
+    public SymbolTable getSymbolTable() {
+        if ((symbols == null) && !symbolsDisabled) {
+            symbols = new SymbolTable();
+        }
+        return symbols;
+    }
+
     @Override
     public Adata getValue() {
         if (last == Token.ROOT) {
@@ -444,6 +520,13 @@ public abstract class AbstractReader implements Areader {
         throw new IllegalStateException("Not a value");
     }
 
+    /**
+     * Whether or not nested groups are decoded on first access.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
     @Override
     public Token last() {
         return last;
@@ -460,6 +543,44 @@ public abstract class AbstractReader implements Areader {
     @Override
     public AbstractReader reset() {
         last = Token.ROOT;
+        depth = 0;
+        inObj = false;
+        keyNext = false;
+        return this;
+    }
+
+    /**
+     * Whether or not nested groups are decoded on first access, false by default.  Ignored by
+     * readers that can't re-read their input.  The input must not be modified while any lazy
+     * group remains undecoded.
+     *
+     * @return This
+     */
+    public AbstractReader setLazy(boolean arg) {
+        lazy = arg;
+        return this;
+    }
+
+    /**
+     * Sets the table used to canonicalize strings, such as one shared by many readers.  Null
+     * disables canonicalization.
+     *
+     * @return This
+     */
+    public AbstractReader setSymbolTable(SymbolTable table) {
+        symbols = table;
+        symbolsDisabled = table == null;
+        return this;
+    }
+
+    /**
+     * Whether or not string values are canonicalized in addition to keys, false by default.
+     * Useful when values come from a small set, such as enumerations.
+     *
+     * @return This
+     */
+    public AbstractReader setSymbolValues(boolean arg) {
+        symbolValues = arg;
         return this;
     }
 
@@ -467,11 +588,54 @@ public abstract class AbstractReader implements Areader {
     // Protected Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Called by getList before each element.  Formats that can encode a run of primitives should
+     * decode the run in bulk, add it to the list and return true if the next input is one.
+     *
+     * @return False to decode the next element with next(), which is the default.
+     */
+    protected boolean addPacked(Alist list) {
+        return false;
+    }
+
+    /**
+     * The number of lists and objects the reader is currently inside of.
+     */
+    protected int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Called by getList and getObj when lazy, immediately after a nested list or object begins.
+     * Readers that can re-read their input should skip to the end of the group, call setEndList
+     * or setEndObj, and return a supplier of a new reader for just the group.  The supplier is
+     * not called until the group is accessed.
+     *
+     * @return Null to decode the group now, which is the default.
+     */
+    protected Supplier<AbstractReader> lazyReader() {
+        return null;
+    }
+
+    /**
+     * Returns the table for the string about to be passed to setNext, or null if it should not
+     * be canonicalized.  Subclasses should call this before creating the string so they can avoid
+     * allocating it.
+     */
+    protected SymbolTable nextSymbols() {
+        if (keyNext || symbolValues) {
+            return getSymbolTable();
+        }
+        return null;
+    }
+
     protected Token setBeginList() {
+        push(false);
         return last = Token.BEGIN_LIST;
     }
 
     protected Token setBeginObj() {
+        push(true);
         return last = Token.BEGIN_OBJ;
     }
 
@@ -480,10 +644,12 @@ public abstract class AbstractReader implements Areader {
     }
 
     protected Token setEndList() {
+        pop();
         return last = Token.END_LIST;
     }
 
     protected Token setEndObj() {
+        pop();
         return last = Token.END_OBJ;
     }
 
@@ -492,6 +658,9 @@ public abstract class AbstractReader implements Areader {
             return setNextNull();
         }
         valDecimal = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.DECIMAL;
     }
 
@@ -500,36 +669,57 @@ public abstract class AbstractReader implements Areader {
             return setNextNull();
         }
         valBigint = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.BIGINT;
     }
 
     protected Token setNext(boolean arg) {
         valBoolean = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.BOOLEAN;
     }
 
     protected Token setNext(byte[] arg) {
         valBinary = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.BINARY;
     }
 
     protected Token setNext(double arg) {
         valDouble = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.DOUBLE;
     }
 
     protected Token setNext(float arg) {
         valFloat = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.FLOAT;
     }
 
     protected Token setNext(int arg) {
         valInt = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.INT;
     }
 
     protected Token setNext(long arg) {
         valLong = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.LONG;
     }
 
@@ -538,11 +728,200 @@ public abstract class AbstractReader implements Areader {
             return setNextNull();
         }
         valString = arg;
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.STRING;
     }
 
     protected Token setNextNull() {
+        if (inObj) {
+            keyNext = !keyNext;
+        }
         return last = Token.NULL;
     }
 
+    /**
+     * Called when projecting a list, where only nested lists and objects can be selected.  Begins
+     * the next value the same as next() if it is a list or object, otherwise skips it the same
+     * as skipValue().  Formats that can skip should override this.
+     *
+     * @return The same as next(), but the value of a skipped scalar is not available.
+     */
+    protected Token skipScalar() {
+        return next();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns a function that decodes the group that just began, or null if it can't be decoded
+     * later.
+     */
+    private Supplier<Agroup> lazySource() {
+        if (!lazy) {
+            return null;
+        }
+        Supplier<AbstractReader> supplier = lazyReader();
+        if (supplier == null) {
+            return null;
+        }
+        SymbolTable symbols = getSymbolTable();
+        boolean values = symbolValues;
+        return () -> {
+            AbstractReader reader = supplier.get();
+            reader.setSymbolTable(symbols);
+            reader.setSymbolValues(values);
+            reader.setLazy(true);
+            return reader.getValue().toGroup();
+        };
+    }
+
+    private Alist nestedList() {
+        Supplier<Agroup> source = lazySource();
+        if (source == null) {
+            return getList();
+        }
+        return new Alist(source);
+    }
+
+    private Aobj nestedObj() {
+        Supplier<Agroup> source = lazySource();
+        if (source == null) {
+            return getObj();
+        }
+        return new Aobj(source);
+    }
+
+    /**
+     * Leaves a list or object, which was a value so an object key is next if the parent is an
+     * object.
+     */
+    private void pop() {
+        if (depth > 0) {
+            --depth;
+        }
+        inObj = (depth > 0) && containers[depth - 1];
+        keyNext = inObj;
+    }
+
+    /**
+     * Decodes the selected parts of the group that just began, or skips it if nothing beneath the
+     * node can be in it.
+     *
+     * @return Null if the group was skipped.
+     */
+    private Agroup project(Projection.Node node) {
+        if (node.all) {
+            return getValue().toGroup();
+        }
+        if (last == Token.BEGIN_OBJ) {
+            if (node.keys != null) {
+                return projectObj(node);
+            }
+        } else if (node.elements != null) {
+            return projectList(node);
+        }
+        skipChildren();
+        return null;
+    }
+
+    /**
+     * Decodes the selected elements of the list that just began.  Unselected elements are skipped
+     * without being decoded.
+     */
+    private Alist projectList(Projection.Node node) {
+        Alist ret = new Alist(ListStore.PENDING);
+        Projection.Node elements = node.elements;
+        Agroup group;
+        Token token;
+        while (true) {
+            if (elements == null) {
+                token = skipValue();
+            } else if (elements.all) {
+                token = next();
+            } else {
+                token = skipScalar();
+            }
+            switch (token) {
+                case END_INPUT:
+                    throw new IllegalStateException("Unexpected end of input");
+                case END_LIST:
+                    return ret;
+                case END_OBJ:
+                    throw new IllegalStateException("Unexpected end of object in list");
+                case BEGIN_LIST:
+                case BEGIN_OBJ:
+                    if ((elements != null) && ((group = project(elements)) != null)) {
+                        ret.add(group);
+                    }
+                    break;
+                default:
+                    if ((elements != null) && elements.all) {
+                        ret.add(getValue());
+                    }
+            }
+        }
+    }
+
+    /**
+     * Decodes the selected members of the object that just began.  Unselected values are skipped
+     * without being decoded.
+     */
+    private Aobj projectObj(Projection.Node node) {
+        Aobj ret = new Aobj();
+        String key;
+        Projection.Node child;
+        Agroup group;
+        while (true) {
+            switch (next()) {
+                case STRING:
+                    key = valString;
+                    break;
+                case END_OBJ:
+                case END_INPUT:
+                    return ret;
+                default:
+                    throw new IllegalStateException("Expecting a string key or object end");
+            }
+            child = node.get(key);
+            if (child == null) {
+                skipValue();
+                continue;
+            }
+            switch (next()) {
+                case END_INPUT:
+                    throw new IllegalStateException("Unexpected end of input");
+                case END_LIST:
+                    throw new IllegalStateException("Unexpected end of list in object");
+                case END_OBJ:
+                    return ret;
+                case BEGIN_LIST:
+                case BEGIN_OBJ:
+                    if ((group = project(child)) != null) {
+                        ret.put(key, group);
+                    }
+                    break;
+                default:
+                    if (child.all) {
+                        ret.put(key, getValue());
+                    }
+            }
+        }
+    }
+
+    /**
+     * Enters a list or object.
+     */
+    private void push(boolean obj) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = obj;
+        inObj = obj;
+        keyNext = obj;
+    }
+
 }
@@ -64,6 +64,11 @@ public abstract class AbstractWriter implements Awriter {
         return this;
     }
 
+    @Override
+    public AbstractWriter beginList(int size) {
+        return beginList();
+    }
+
     @Override
     public AbstractWriter beginObj() {
         try {
@@ -88,6 +93,11 @@ public abstract class AbstractWriter implements Awriter {
         return this;
     }
 
+    @Override
+    public AbstractWriter beginObj(int size) {
+        return beginObj();
+    }
+
     @Override
     public AbstractWriter endList() {
         try {
@@ -132,6 +142,28 @@ public abstract class AbstractWriter implements Awriter {
         return this;
     }
 
+    /**
+     * Completes the current document so that another can be appended to the same output.  Unlike
+     * reset(), nothing that has been encoded is discarded.  Writes the framing between records
+     * required by the format, if any, such as the newline in NDJSON.
+     *
+     * @throws IllegalStateException If a list or object is still open.
+     */
+    public AbstractWriter endRecord() {
+        if (depth > 0) {
+            throw new IllegalStateException("Nesting error.");
+        }
+        try {
+            if (last != LAST_INIT) {
+                writeRecordEnd();
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        last = LAST_INIT;
+        return this;
+    }
+
     @Override
     public AbstractWriter key(CharSequence arg) {
         try {
@@ -191,18 +223,17 @@ public abstract class AbstractWriter implements Awriter {
                 value(arg.toInt());
                 break;
             case LIST:
-                beginList();
-                for (Adata val : arg.toList()) {
-                    value(val);
-                }
+                Alist list = arg.toList();
+                beginList(list.size());
+                writeElements(list);
                 endList();
                 break;
             case LONG:
                 value(arg.toLong());
                 break;
             case OBJECT:
-                beginObj();
                 Aobj object = arg.toObj();
+                beginObj(object.size());
                 Member e = object.getFirst();
                 while (e != null) {
                     key(e.getKey()).value(e.getValue());
@@ -578,9 +609,79 @@ public abstract class AbstractWriter implements Awriter {
      */
     protected abstract void writeNull() throws IOException;
 
+    /**
+     * Called by value(Adata) after writeBeginList, formats that can encode a run of primitives
+     * more compactly than individual values should write every element and return true.
+     *
+     * @return False to write the elements individually, which is the default.
+     */
+    protected boolean writePacked(Alist list) throws IOException {
+        return false;
+    }
+
+    /**
+     * Write whatever follows each document in a stream of records.  Does nothing by default.
+     *
+     * @see #endRecord()
+     */
+    protected void writeRecordEnd() throws IOException {
+    }
+
     /**
      * Write a list value or object entry separator, such as the comma in json.
      */
     protected abstract void writeSeparator() throws IOException;
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the elements of a typed list without boxing them.
+     */
+    private void writeElements(Alist list) {
+        try {
+            if (writePacked(list)) {
+                return;
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        int len = list.size();
+        Atype type = list.typedAs();
+        if (type == null) {
+            for (Adata val : list) {
+                value(val);
+            }
+            return;
+        }
+        switch (type) {
+            case BOOLEAN:
+                for (int i = 0; i < len; i++) {
+                    value(list.getBoolean(i));
+                }
+                break;
+            case DOUBLE:
+                for (int i = 0; i < len; i++) {
+                    value(list.getDouble(i));
+                }
+                break;
+            case FLOAT:
+                for (int i = 0; i < len; i++) {
+                    value(list.getFloat(i));
+                }
+                break;
+            case INT:
+                for (int i = 0; i < len; i++) {
+                    value(list.getInt(i));
+                }
+                break;
+            case LONG:
+                for (int i = 0; i < len; i++) {
+                    value(list.getLong(i));
+                }
+                break;
+        }
+    }
+
 }
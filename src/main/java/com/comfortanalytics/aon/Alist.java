@@ -2,14 +2,24 @@ package com.comfortanalytics.aon;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
  * Indexed collection of values.  Adding null will result in Anull.NULL being added. Not thread
  * safe.
+ * <p>
+ * A list whose elements are all booleans, doubles, floats, ints or longs can store them unboxed
+ * in a primitive array, and only creates Adata when an element is requested as such.  Lists are
+ * typed when constructed with an element type, and readers type the lists they decode when every
+ * element is the same primitive type.  Adding any other type of value to a typed list converts
+ * it to a generic list.
+ * <p>
+ * Lists created by lazy readers hold the encoded bytes until first access, which decodes the
+ * elements.  Nested groups are decoded on their own first access.
  *
  * @author Aaron Hansen
  */
@@ -20,7 +30,36 @@ public class Alist extends Agroup implements Iterable<Adata> {
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
-    private final ArrayList<Adata> values = new ArrayList<>();
+    private ListStore store;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public Alist() {
+        store = new ListStore.Generic();
+    }
+
+    /**
+     * Creates a list that stores elements of the given type in a primitive array.
+     *
+     * @param elementType BOOLEAN, DOUBLE, FLOAT, INT or LONG.  Any other type creates a generic
+     *                    list.
+     */
+    public Alist(Atype elementType) {
+        store = ListStore.forType(elementType);
+    }
+
+    Alist(ListStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Decodes the elements from the source on first access.
+     */
+    Alist(Supplier<Agroup> source) {
+        this.store = new ListStore.Lazy(source);
+    }
 
     ///////////////////////////////////////////////////////////////////////////
     // Public Methods
@@ -37,7 +76,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
         if (val == null) {
             val = Anull.NULL;
         }
-        values.add(val);
+        store = store.add(val);
         return this;
     }
 
@@ -62,7 +101,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist add(boolean val) {
-        return add(Abool.valueOf(val));
+        store = store.add(val);
+        return this;
     }
 
     /**
@@ -78,7 +118,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist add(double val) {
-        return add(Adouble.valueOf(val));
+        store = store.add(val);
+        return this;
     }
 
     /**
@@ -86,7 +127,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist add(float val) {
-        return add(Afloat.valueOf(val));
+        store = store.add(val);
+        return this;
     }
 
     /**
@@ -94,7 +136,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist add(int val) {
-        return add(Aint.valueOf(val));
+        store = store.add(val);
+        return this;
     }
 
     /**
@@ -102,7 +145,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist add(long val) {
-        return add(Along.valueOf(val));
+        store = store.add(val);
+        return this;
     }
 
     /**
@@ -120,7 +164,62 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist addAll(Alist list) {
-        values.addAll(list.values);
+        store = store.addAll(list.store);
+        return this;
+    }
+
+    /**
+     * Adds the values without boxing them when this list is empty or typed as boolean.
+     *
+     * @return this
+     */
+    @Nonnull
+    public Alist addAll(boolean[] vals) {
+        store = store.addAll(vals);
+        return this;
+    }
+
+    /**
+     * Adds the values without boxing them when this list is empty or typed as double.
+     *
+     * @return this
+     */
+    @Nonnull
+    public Alist addAll(double[] vals) {
+        store = store.addAll(vals);
+        return this;
+    }
+
+    /**
+     * Adds the values without boxing them when this list is empty or typed as float.
+     *
+     * @return this
+     */
+    @Nonnull
+    public Alist addAll(float[] vals) {
+        store = store.addAll(vals);
+        return this;
+    }
+
+    /**
+     * Adds the values without boxing them when this list is empty or typed as int.
+     *
+     * @return this
+     */
+    @Nonnull
+    public Alist addAll(int[] vals) {
+        store = store.addAll(vals);
+        return this;
+    }
+
+    /**
+     * Adds the values without boxing them when this list is empty or typed as long.
+     *
+     * @return this
+     */
+    @Nonnull
+    public Alist addAll(long[] vals) {
+        store = store.addAll(vals);
         return this;
     }
 
@@ -141,18 +240,14 @@ public class Alist extends Agroup implements Iterable<Adata> {
     @Nonnull
     @Override
     public Agroup clear() {
-        values.clear();
+        store.clear();
         return this;
     }
 
     @Nonnull
     @Override
     public Adata copy() {
-        Alist ret = new Alist();
-        for (Adata val : values) {
-            ret.add(val.copy());
-        }
-        return ret;
+        return new Alist(store.copy());
     }
 
     @Override
@@ -168,7 +263,12 @@ public class Alist extends Agroup implements Iterable<Adata> {
             if (size() != arg.size()) {
                 return false;
             }
-            return values.equals(arg.values);
+            for (int i = 0, len = size(); i < len; i++) {
+                if (!get(i).equals(arg.get(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -179,7 +279,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
      * @see Adata#get()
      */
     public <T extends Adata> T get(int idx) {
-        return (T) values.get(idx);
+        return (T) store.get(idx);
     }
 
     /**
@@ -188,7 +288,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
      * @see Adata#get()
      */
     public <T extends Adata> T get(int idx, Class<T> type) {
-        return type.cast(values.get(idx));
+        return type.cast(store.get(idx));
     }
 
     /**
@@ -277,6 +377,20 @@ public class Alist extends Agroup implements Iterable<Adata> {
         return ret.toString();
     }
 
+    /**
+     * The boolean value at the given index, which is not boxed if the list is typed.
+     */
+    public boolean getBoolean(int idx) {
+        return store.getBoolean(idx);
+    }
+
+    /**
+     * The double value at the given index, which is not boxed if the list is typed.
+     */
+    public double getDouble(int idx) {
+        return store.getDouble(idx);
+    }
+
     /**
      * Returns the item at index 0 or null (not Anull.NULL).
      *
@@ -289,16 +403,37 @@ public class Alist extends Agroup implements Iterable<Adata> {
         return get(0);
     }
 
+    /**
+     * The float value at the given index, which is not boxed if the list is typed.
+     */
+    public float getFloat(int idx) {
+        return store.getFloat(idx);
+    }
+
+    /**
+     * The int value at the given index, which is not boxed if the list is typed.
+     */
+    public int getInt(int idx) {
+        return store.getInt(idx);
+    }
+
     /**
      * Returns the item at the highest index or null (not Anull.NULL).
      *
      * @return Null (not Anull.NULL) if empty.
      */
     public Adata getLast() {
-        if (values.isEmpty()) {
+        if (isEmpty()) {
             return null;
         }
-        return values.get(values.size() - 1);
+        return get(size() - 1);
+    }
+
+    /**
+     * The long value at the given index, which is not boxed if the list is typed.
+     */
+    public long getLong(int idx) {
+        return store.getLong(idx);
     }
 
     /**
@@ -314,19 +449,23 @@ public class Alist extends Agroup implements Iterable<Adata> {
      * Returns the value wrapped by Adata at the given index.
      */
     public <T> T getValue(int idx) {
-        return values.get(idx).get();
+        return store.get(idx).get();
     }
 
     /**
      * Returns the value wrapped by Adata at the given index.
      */
     public <T> T getValue(int idx, Class<T> type) {
-        return type.cast(values.get(idx).get());
+        return type.cast(store.get(idx).get());
     }
 
     @Override
     public int hashCode() {
-        return values.hashCode();
+        int ret = 1;
+        for (int i = 0, len = size(); i < len; i++) {
+            ret = (31 * ret) + get(i).hashCode();
+        }
+        return ret;
     }
 
     /**
@@ -372,7 +511,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
     @Nonnull
     @Override
     public Iterator<Adata> iterator() {
-        return values.iterator();
+        return new Itr();
     }
 
     /**
@@ -423,7 +562,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
         if (val == null) {
             val = Anull.NULL;
         }
-        values.set(idx, val);
+        store = store.set(idx, val);
         return this;
     }
 
@@ -448,7 +587,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist put(int idx, boolean val) {
-        return put(idx, Abool.valueOf(val));
+        store = store.set(idx, Abool.valueOf(val));
+        return this;
     }
 
     /**
@@ -464,7 +604,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist put(int idx, double val) {
-        return put(idx, Adouble.valueOf(val));
+        store = store.set(idx, Adouble.valueOf(val));
+        return this;
     }
 
     /**
@@ -472,7 +613,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist put(int idx, float val) {
-        return put(idx, Afloat.valueOf(val));
+        store = store.set(idx, Afloat.valueOf(val));
+        return this;
     }
 
     /**
@@ -480,7 +622,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist put(int idx, int val) {
-        return put(idx, Aint.valueOf(val));
+        store = store.set(idx, Aint.valueOf(val));
+        return this;
     }
 
     /**
@@ -488,7 +631,8 @@ public class Alist extends Agroup implements Iterable<Adata> {
      */
     @Nonnull
     public Alist put(int idx, long val) {
-        return put(idx, Along.valueOf(val));
+        store = store.set(idx, Along.valueOf(val));
+        return this;
     }
 
     /**
@@ -505,7 +649,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
      * @return The value removed.
      */
     public Adata remove(int idx) {
-        return values.remove(idx);
+        return store.remove(idx);
     }
 
     /**
@@ -534,7 +678,7 @@ public class Alist extends Agroup implements Iterable<Adata> {
 
     @Override
     public int size() {
-        return values.size();
+        return store.size();
     }
 
     @Nonnull
@@ -543,4 +687,55 @@ public class Alist extends Agroup implements Iterable<Adata> {
         return this;
     }
 
+    /**
+     * The type of every element if the list is typed, otherwise null.
+     */
+    @Nullable
+    public Atype typedAs() {
+        return store.type();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    ListStore getStore() {
+        return store;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    private class Itr implements Iterator<Adata> {
+
+        private int last = -1;
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < size();
+        }
+
+        @Override
+        public Adata next() {
+            if (next >= size()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            Alist.this.remove(last);
+            next = last;
+            last = -1;
+        }
+
+    }
+
 }
@@ -16,25 +16,57 @@ import javax.annotation.Nullable;
  * String keyed collection of values that preserves the order of addition.  To traverse members in
  * order, use {@link #iterator()}, or {@link #getFirst()} and then use {@link Member#next()}.
  * <p>
+ * Members are doubly linked so removal, including through the iterator, is constant time.  Small
+ * objects find keys by scanning the members, a hash map is only created once the size exceeds
+ * {@link #HASH_THRESHOLD}.
+ * <p>
  * Adding null will result in Anull.NULL being put into the obj.
  * <p>
- * This is not thread safe.
+ * Objects created by lazy readers hold the encoded bytes until first access, which decodes the
+ * members.  Nested groups are decoded on their own first access.
+ * <p>
+ * This is not thread safe, which includes decoding on first access.
  *
  * @author Aaron Hansen
  */
 @SuppressWarnings({"unused", "unchecked"})
 public class Aobj extends Agroup implements Iterable<Member> {
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Objects with more members than this use a hash map for key lookup.
+     */
+    public static final int HASH_THRESHOLD = 8;
+
     ///////////////////////////////////////////////////////////////////////////
     // Instance Fields
     ///////////////////////////////////////////////////////////////////////////
 
     private volatile Member first;
     private volatile Member last;
-    private final Map<String, Member> map = new HashMap<>();
+    private Map<String, Member> map;
+    private int size;
+    private Supplier<Agroup> source;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public Aobj() {
+    }
+
+    /**
+     * Decodes the members from the source on first access.
+     */
+    Aobj(Supplier<Agroup> source) {
+        this.source = source;
+    }
 
     ///////////////////////////////////////////////////////////////////////////
-    // Methods
+    // Public Methods
     ///////////////////////////////////////////////////////////////////////////
 
     @Nonnull
@@ -46,15 +78,21 @@ public class Aobj extends Agroup implements Iterable<Member> {
     @Nonnull
     @Override
     public Aobj clear() {
+        source = null;
         first = null;
         last = null;
-        map.clear();
+        map = null;
+        size = 0;
         return this;
     }
 
     @Nonnull
     @Override
     public Aobj copy() {
+        if (source != null) {
+            //the encoded bytes are never modified
+            return new Aobj(source);
+        }
         Aobj ret = new Aobj();
         Member e = getFirst();
         while (e != null) {
@@ -73,7 +111,18 @@ public class Aobj extends Agroup implements Iterable<Member> {
             return true;
         }
         if (o instanceof Aobj) {
-            return map.equals(((Aobj) o).map);
+            Aobj obj = (Aobj) o;
+            if (obj.size() != size()) {
+                return false;
+            }
+            Member other;
+            for (Member m = first; m != null; m = m.next) {
+                other = obj.getMember(m.key);
+                if ((other == null) || !other.val.equals(m.val)) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -219,6 +268,9 @@ public class Aobj extends Agroup implements Iterable<Member> {
      * @return Possibly null
      */
     public Member getFirst() {
+        if (source != null) {
+            decode();
+        }
         return first;
     }
 
@@ -228,6 +280,9 @@ public class Aobj extends Agroup implements Iterable<Member> {
      * @return Possibly null
      */
     public Member getLast() {
+        if (source != null) {
+            decode();
+        }
         return last;
     }
 
@@ -237,10 +292,24 @@ public class Aobj extends Agroup implements Iterable<Member> {
      * @return Possibly null
      */
     public Member getMember(@Nullable String key) {
+        if (source != null) {
+            decode();
+        }
         if (key == null) {
             return null;
         }
-        return map.get(key);
+        if (map != null) {
+            return map.get(key);
+        }
+        int hash = key.hashCode();
+        String k;
+        for (Member m = first; m != null; m = m.next) {
+            k = m.key;
+            if ((k == key) || ((k.hashCode() == hash) && k.equals(key))) {
+                return m;
+            }
+        }
+        return null;
     }
 
     /**
@@ -288,9 +357,19 @@ public class Aobj extends Agroup implements Iterable<Member> {
         return type.cast(e.getValue().get());
     }
 
+    /**
+     * The sum of the member hash codes, the same as a map.
+     */
     @Override
     public int hashCode() {
-        return map.hashCode();
+        if (source != null) {
+            decode();
+        }
+        int ret = 0;
+        for (Member m = first; m != null; m = m.next) {
+            ret += m.hashCode();
+        }
+        return ret;
     }
 
     /**
@@ -330,7 +409,11 @@ public class Aobj extends Agroup implements Iterable<Member> {
 
             @Override
             public void remove() {
+                if (prev == null) {
+                    throw new IllegalStateException();
+                }
                 Aobj.this.remove(prev.key);
+                prev = null;
             }
         };
     }
@@ -375,10 +458,20 @@ public class Aobj extends Agroup implements Iterable<Member> {
             }
         } else {
             e = new Member(key, val);
-            map.put(key, e);
+            if (map != null) {
+                map.put(key, e);
+            } else if (size == HASH_THRESHOLD) {
+                map = new HashMap<>();
+                for (Member m = first; m != null; m = m.next) {
+                    map.put(m.key, m);
+                }
+                map.put(key, e);
+            }
+            size++;
             if (first == null) {
                 first = e;
             } else {
+                e.prev = last;
                 last.setNext(e);
             }
             last = e;
@@ -503,22 +596,14 @@ public class Aobj extends Agroup implements Iterable<Member> {
         if (key == null) {
             return null;
         }
-        Member e = map.remove(key);
+        if (source != null) {
+            decode();
+        }
+        Member e = map == null ? getMember(key) : map.remove(key);
         if (e == null) {
             return null;
         }
-        if (size() == 0) {
-            first = null;
-            last = null;
-        } else if (e == first) {
-            first = e.next();
-        } else {
-            Member prev = getPrev(key);
-            prev.setNext(e.next());
-            if (e == last) {
-                last = prev;
-            }
-        }
+        unlink(e);
         return e.getValue();
     }
 
@@ -526,8 +611,16 @@ public class Aobj extends Agroup implements Iterable<Member> {
      * @return Possibly null
      */
     public Adata removeFirst() {
-        if (first != null) {
-            return remove(first.getKey());
+        if (source != null) {
+            decode();
+        }
+        Member e = first;
+        if (e != null) {
+            if (map != null) {
+                map.remove(e.getKey());
+            }
+            unlink(e);
+            return e.getValue();
         }
         return null;
     }
@@ -536,15 +629,26 @@ public class Aobj extends Agroup implements Iterable<Member> {
      * @return Possibly null
      */
     public Adata removeLast() {
-        if (last != null) {
-            return remove(last.getKey());
+        if (source != null) {
+            decode();
+        }
+        Member e = last;
+        if (e != null) {
+            if (map != null) {
+                map.remove(e.getKey());
+            }
+            unlink(e);
+            return e.getValue();
         }
         return null;
     }
 
     @Override
     public int size() {
-        return map.size();
+        if (source != null) {
+            decode();
+        }
+        return size;
     }
 
     @Nonnull
@@ -557,17 +661,37 @@ public class Aobj extends Agroup implements Iterable<Member> {
     // Package / Private Methods
     ///////////////////////////////////////////////////////////////////////////
 
-    private Member getPrev(String key) {
-        Member prev = null;
-        Member entry = getFirst();
-        while (entry != null) {
-            if (entry.getKey().equals(key)) {
-                return prev;
-            }
-            prev = entry;
-            entry = entry.next();
+    /**
+     * Takes the members of the object decoded from the source.
+     */
+    private void decode() {
+        Aobj obj = (Aobj) source.get();
+        source = null;
+        first = obj.first;
+        last = obj.last;
+        map = obj.map;
+        size = obj.size;
+    }
+
+    /**
+     * Removes the member from the chain and decrements the size.  The member keeps its next
+     * reference so that traversal which removes the current member can continue.
+     */
+    private void unlink(Member e) {
+        size--;
+        Member prev = e.prev;
+        Member next = e.next;
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next == null) {
+            last = prev;
+        } else {
+            next.prev = prev;
         }
-        return prev;
+        e.prev = null;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -581,6 +705,7 @@ public class Aobj extends Agroup implements Iterable<Member> {
 
         private final String key;
         private Member next;
+        private Member prev;
         private Adata val;
 
         Member(@Nonnull String key, @Nonnull Adata val) {
@@ -3,10 +3,10 @@ package com.comfortanalytics.aon;
 import com.comfortanalytics.aon.io.AonReader;
 import com.comfortanalytics.aon.io.AonWriter;
 import com.comfortanalytics.aon.json.JsonReader;
+import com.comfortanalytics.aon.json.JsonUtf8Reader;
 import com.comfortanalytics.aon.json.JsonWriter;
 import com.comfortanalytics.aon.msgpack.MsgPackReader;
 import com.comfortanalytics.aon.msgpack.MsgPackWriter;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
@@ -16,7 +16,14 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -36,11 +43,32 @@ public class Aon {
      * Encode the object to a byte array.
      */
     public static byte[] aonBytes(Agroup arg) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        writeAon(arg, out, true);
-        return out.toByteArray();
+        AonWriter writer = new AonWriter();
+        writer.value(arg);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes the array in place, without an intermediate stream.
+     */
+    public static AonReader aonReader(byte[] in) {
+        return new AonReader(in);
     }
 
+    /**
+     * Decodes the remaining bytes of the buffer, such as one that is memory mapped.  Buffers
+     * backed by an array are decoded in place.
+     */
+    public static AonReader aonReader(ByteBuffer in) {
+        if (in.hasArray()) {
+            return new AonReader(in.array(), in.arrayOffset() + in.position(), in.remaining());
+        }
+        return new AonReader(new MappedInput(in));
+    }
+
+    /**
+     * Files of at least MappedInput.MAP_THRESHOLD bytes are memory mapped.
+     */
     public static AonReader aonReader(File in) {
         return new AonReader(in);
     }
@@ -57,6 +85,10 @@ public class Aon {
         return new AonWriter(out);
     }
 
+    public static AonWriter aonWriter(WritableByteChannel out) {
+        return new AonWriter(out);
+    }
+
     /**
      * True if the value == null or value.isNull.
      */
@@ -77,13 +109,39 @@ public class Aon {
     }
 
     /**
-     * Returns a reader for a UTF-8 encoded file.
+     * Returns a reader for a UTF-8 encoded array, which will not be copied.
+     */
+    public static JsonReader jsonReader(byte[] in) {
+        return new JsonUtf8Reader(in);
+    }
+
+    /**
+     * Returns a reader for the remaining UTF-8 encoded bytes of the buffer, such as one that is
+     * memory mapped.  Buffers backed by an array are decoded in place.
+     */
+    public static JsonReader jsonReader(ByteBuffer in) {
+        if (in.hasArray()) {
+            return new JsonUtf8Reader(in.array(), in.arrayOffset() + in.position(),
+                                      in.remaining());
+        }
+        return new JsonUtf8Reader(new MappedInput(in));
+    }
+
+    /**
+     * Returns a reader for a UTF-8 encoded file.  Files of at least MappedInput.MAP_THRESHOLD
+     * bytes are memory mapped.
      */
     public static JsonReader jsonReader(File in) {
-        return new JsonReader(in);
+        return new JsonUtf8Reader(in);
     }
 
+    /**
+     * UTF-8 is decoded directly from bytes, other charsets are decoded to chars first.
+     */
     public static JsonReader jsonReader(File in, Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return new JsonUtf8Reader(in);
+        }
         return new JsonReader(in, charset);
     }
 
@@ -91,10 +149,16 @@ public class Aon {
      * Returns a reader for a UTF-8 encoded stream.
      */
     public static JsonReader jsonReader(InputStream in) {
-        return new JsonReader(in);
+        return new JsonUtf8Reader(in);
     }
 
+    /**
+     * UTF-8 is decoded directly from bytes, other charsets are decoded to chars first.
+     */
     public static JsonReader jsonReader(InputStream in, Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return new JsonUtf8Reader(in);
+        }
         return new JsonReader(in, charset);
     }
 
@@ -128,6 +192,10 @@ public class Aon {
         return new JsonWriter(out, charset);
     }
 
+    public static JsonWriter jsonWriter(WritableByteChannel out) {
+        return new JsonWriter(out);
+    }
+
     public static JsonWriter jsonWriter(Writer out) {
         return new JsonWriter(out);
     }
@@ -141,6 +209,25 @@ public class Aon {
         return out.toByteArray();
     }
 
+    public static MsgPackReader msgPackReader(byte[] in) {
+        return new MsgPackReader(in);
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer, such as one that is memory mapped.  Buffers
+     * backed by an array are decoded in place.
+     */
+    public static MsgPackReader msgPackReader(ByteBuffer in) {
+        if (in.hasArray()) {
+            return new MsgPackReader(in.array(), in.arrayOffset() + in.position(),
+                                     in.remaining());
+        }
+        return new MsgPackReader(new MappedInput(in));
+    }
+
+    /**
+     * Files of at least MappedInput.MAP_THRESHOLD bytes are memory mapped.
+     */
     public static MsgPackReader msgPackReader(File in) {
         return new MsgPackReader(in);
     }
@@ -157,9 +244,25 @@ public class Aon {
         return new MsgPackWriter(out);
     }
 
+    public static MsgPackWriter msgPackWriter(WritableByteChannel out) {
+        return new MsgPackWriter(out);
+    }
+
     public static <T extends Agroup> T readAon(byte[] arg) {
-        ByteArrayInputStream in = new ByteArrayInputStream(arg);
-        return readAon(in, true);
+        try (Areader reader = aonReader(arg)) {
+            return (T) reader.getValue().toGroup();
+        }
+    }
+
+    /**
+     * Decodes only the selected parts of the document.
+     *
+     * @see Projection
+     */
+    public static <T extends Agroup> T readAon(byte[] arg, Projection projection) {
+        try (AonReader reader = aonReader(arg)) {
+            return project(reader, projection);
+        }
     }
 
     public static <T extends Agroup> T readAon(File in) {
@@ -183,9 +286,34 @@ public class Aon {
         }
     }
 
+    /**
+     * Decodes the top level group, but nested groups are only decoded on first access.  The
+     * array must not be modified while any group remains undecoded.
+     */
+    public static <T extends Agroup> T readAonLazy(byte[] arg) {
+        try (AbstractReader reader = aonReader(arg).setLazy(true)) {
+            return (T) reader.getValue().toGroup();
+        }
+    }
+
+    /**
+     * Decodes UTF-8 directly from the array.
+     */
     public static <T extends Agroup> T readJson(byte[] arg) {
-        ByteArrayInputStream in = new ByteArrayInputStream(arg);
-        return readJson(in, true);
+        try (JsonReader reader = jsonReader(arg)) {
+            return (T) reader.getValue().toGroup();
+        }
+    }
+
+    /**
+     * Decodes only the selected parts of the UTF-8 encoded document.
+     *
+     * @see Projection
+     */
+    public static <T extends Agroup> T readJson(byte[] arg, Projection projection) {
+        try (JsonReader reader = jsonReader(arg)) {
+            return project(reader, projection);
+        }
     }
 
     public static <T extends Agroup> T readJson(File file, Charset charset) {
@@ -238,8 +366,20 @@ public class Aon {
     }
 
     public static <T extends Agroup> T readMsgPack(byte[] arg) {
-        ByteArrayInputStream in = new ByteArrayInputStream(arg);
-        return readMsgPack(in, true);
+        try (Areader reader = msgPackReader(arg)) {
+            return (T) reader.getValue().toGroup();
+        }
+    }
+
+    /**
+     * Decodes only the selected parts of the document.
+     *
+     * @see Projection
+     */
+    public static <T extends Agroup> T readMsgPack(byte[] arg, Projection projection) {
+        try (MsgPackReader reader = msgPackReader(arg)) {
+            return project(reader, projection);
+        }
     }
 
     public static <T extends Agroup> T readMsgPack(File in) {
@@ -263,6 +403,44 @@ public class Aon {
         }
     }
 
+    /**
+     * Decodes the top level group, but nested groups are only decoded on first access.  The
+     * array must not be modified while any group remains undecoded.
+     */
+    public static <T extends Agroup> T readMsgPackLazy(byte[] arg) {
+        try (AbstractReader reader = msgPackReader(arg).setLazy(true)) {
+            return (T) reader.getValue().toGroup();
+        }
+    }
+
+    /**
+     * Streams the elements of a list one at a time, so memory is bounded by the largest element
+     * rather than the entire list.  Closing the stream closes the reader.
+     *
+     * @param path Keys of nested objects leading to the list, if any.
+     * @see Areader#elements(String...)
+     */
+    public static Stream<Adata> stream(Areader reader, String... path) {
+        Spliterator<Adata> split = Spliterators.spliteratorUnknownSize(
+                reader.elements(path), Spliterator.NONNULL | Spliterator.ORDERED);
+        return StreamSupport.stream(split, false).onClose(reader::close);
+    }
+
+    /**
+     * Converts between formats token by token, without decoding a tree.  Copies one complete
+     * value, such as an entire document.  For example, to convert Aon to pretty printed json:
+     * <pre>
+     * Aon.transcode(Aon.aonReader(in), Aon.jsonWriter(out).setPrettyPrint(true));
+     * </pre>
+     * Neither the reader nor the writer is closed.  To convert a stream of records, call this
+     * until it returns false, calling endRecord() on the writer after each.
+     *
+     * @return False if the reader was already at the end of input.
+     */
+    public static boolean transcode(Areader in, Awriter out) {
+        return Transcoder.transcode(in, out);
+    }
+
     public static Adecimal valueOf(BigDecimal val) {
         return Adecimal.valueOf(val);
     }
@@ -379,4 +557,19 @@ public class Aon {
         return value;
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static <T extends Agroup> T project(AbstractReader reader, Projection projection) {
+        switch (reader.next()) {
+            case BEGIN_LIST:
+                return (T) reader.getList(projection);
+            case BEGIN_OBJ:
+                return (T) reader.getObj(projection);
+            default:
+                throw new IllegalStateException("Expecting a list or object");
+        }
+    }
+
 }
@@ -3,6 +3,7 @@ package com.comfortanalytics.aon;
 import java.io.Closeable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Iterator;
 
 /**
  * A decoder that can be used to decode an entire graph in pieces, or one large Aobj, or somewhere
@@ -23,6 +24,11 @@ import java.math.BigInteger;
  * <li>Everything else - Call the corresponding getter.
  * </ul>
  * <p>
+ * Unwanted values can be discarded with skipValue() and skipChildren(), which the format readers
+ * implement by scanning the input rather than decoding it.
+ * <p>
+ * Very large lists of records can be decoded one element at a time with elements().
+ * <p>
  * Be aware that numbers may not decode to the same type they were encoded from.
  *
  * @author Aaron Hansen
@@ -33,6 +39,20 @@ public interface Areader extends Closeable {
     @Override
     void close();
 
+    /**
+     * Decodes the elements of a list one at a time, rather than the entire list at once.  The
+     * list is either the current value, or found by following keys through nested objects.
+     * Members that are not on the path are skipped without being decoded.  The reader must not
+     * be otherwise used until the iterator is exhausted, at which point last() == END_LIST.
+     *
+     * @param path Keys of nested objects leading to the list, if any.  If a key is missing, the
+     *             iterator will be empty.
+     * @throws IllegalStateException If the path does not lead to a list.
+     */
+    default Iterator<Adata> elements(String... path) {
+        return new ElementIterator(this, path);
+    }
+
     /**
      * Returns the value when last() == DECIMAL.
      */
@@ -85,6 +105,17 @@ public interface Areader extends Closeable {
      */
     Aobj getObj();
 
+    /**
+     * The position in the input of the first byte, or char, of the token last returned by next(),
+     * relative to the beginning of the input.  Can be used to locate records in a stream of
+     * concatenated documents.
+     *
+     * @return -1 if the reader does not track it.
+     */
+    default long getOffset() {
+        return -1;
+    }
+
     /**
      * Returns the value when last() == STRING or KEY.
      */
@@ -111,6 +142,50 @@ public interface Areader extends Closeable {
      */
     Areader reset();
 
+    /**
+     * If last() is BEGIN_LIST or BEGIN_OBJ, advances to the matching END_LIST or END_OBJ without
+     * decoding anything in between.  Otherwise does nothing.
+     *
+     * @return last()
+     */
+    default Token skipChildren() {
+        Token ret = last();
+        if ((ret != Token.BEGIN_LIST) && (ret != Token.BEGIN_OBJ)) {
+            return ret;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            switch (next()) {
+                case BEGIN_LIST:
+                case BEGIN_OBJ:
+                    depth++;
+                    break;
+                case END_LIST:
+                case END_OBJ:
+                    depth--;
+                    break;
+                case END_INPUT:
+                    throw new IllegalStateException("Unexpected end of input");
+            }
+        }
+        return last();
+    }
+
+    /**
+     * Advances past the next value without decoding it, including the entire contents of a list
+     * or object.  In an object, call this after the key to skip its value.  If the current list
+     * or object has no more values, this is the same as next().
+     *
+     * @return The first token of what was skipped: BEGIN_LIST or BEGIN_OBJ for a group, in which
+     * case last() is the matching end; END_LIST, END_OBJ or END_INPUT if there was no value;
+     * otherwise the value type, which may be NULL since the value was not decoded.
+     */
+    default Token skipValue() {
+        Token ret = next();
+        skipChildren();
+        return ret;
+    }
+
     /**
      * Represents the state of the reader, and determines which getter should be called next.
      */
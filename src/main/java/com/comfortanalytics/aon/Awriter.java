@@ -31,6 +31,17 @@ public interface Awriter extends Closeable, Flushable {
      */
     Awriter beginList();
 
+    /**
+     * Start a new list whose number of elements is known in advance and return this.  Formats
+     * that encode lengths can use the size to avoid buffering, others ignore it.
+     *
+     * @param size The exact number of values that will be written before endList().
+     * @throws IllegalStateException when improperly called.
+     */
+    default Awriter beginList(int size) {
+        return beginList();
+    }
+
     /**
      * Start a new object and return this.
      *
@@ -38,6 +49,17 @@ public interface Awriter extends Closeable, Flushable {
      */
     Awriter beginObj();
 
+    /**
+     * Start a new object whose number of members is known in advance and return this.  Formats
+     * that encode lengths can use the size to avoid buffering, others ignore it.
+     *
+     * @param size The exact number of key value pairs that will be written before endObj().
+     * @throws IllegalStateException when improperly called.
+     */
+    default Awriter beginObj(int size) {
+        return beginObj();
+    }
+
     /**
      * Close the stream. IOExceptions will be wrapped in runtime exceptions.
      */
@@ -0,0 +1,104 @@
+package com.comfortanalytics.aon;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.UnaryOperator;
+
+/**
+ * An OutputStream that fills caller provided ByteBuffers, heap or direct, such as those from a
+ * pool.
+ * <p>
+ * Whenever the current buffer is full the callback is given it, and returns the next buffer to
+ * fill.  The callback can drain and return the same buffer, or hand the full one off and return
+ * a new one.  On flush and close the callback is also given the buffer if anything has been
+ * written to it, so that a partial buffer can be sent.  The buffer is passed as is, it must be
+ * flipped before reading.
+ *
+ * @author Aaron Hansen
+ */
+public class ByteBufferOutput extends OutputStream {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private ByteBuffer buf;
+    private final UnaryOperator<ByteBuffer> onFull;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param buf    The first buffer to fill, starting at its position.
+     * @param onFull Given each full buffer, returns the next one to fill, which must have room
+     *               for at least one byte.
+     */
+    public ByteBufferOutput(ByteBuffer buf, UnaryOperator<ByteBuffer> onFull) {
+        if ((buf == null) || (onFull == null)) {
+            throw new NullPointerException();
+        }
+        this.buf = buf;
+        this.onFull = onFull;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Gives the current buffer to the callback if anything has been written to it.
+     */
+    @Override
+    public void flush() {
+        if (buf.position() > 0) {
+            next();
+        }
+    }
+
+    /**
+     * The buffer currently being filled.
+     */
+    public ByteBuffer getBuffer() {
+        return buf;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (!buf.hasRemaining()) {
+                next();
+            }
+            int count = Math.min(len, buf.remaining());
+            buf.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        if (!buf.hasRemaining()) {
+            next();
+        }
+        buf.put((byte) b);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void next() {
+        ByteBuffer tmp = onFull.apply(buf);
+        if ((tmp == null) || !tmp.hasRemaining()) {
+            throw new IllegalStateException("No room in the next buffer");
+        }
+        buf = tmp;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.comfortanalytics.aon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An OutputStream that writes straight to a channel, such as a FileChannel or SocketChannel,
+ * without buffering or copying.  The writers already encode into their own buffers, so each
+ * write is one bulk transfer of a writer's buffer.
+ * <p>
+ * Channels that support gathering writes can be sent several buffers in one call, which the Aon
+ * writer uses to send its buffer together with a large payload that bypassed it.
+ * <p>
+ * Blocking channels are expected, non-blocking channels are spun on until they accept every
+ * byte.
+ *
+ * @author Aaron Hansen
+ */
+public class ChannelOutput extends OutputStream {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer one = ByteBuffer.allocate(1);
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public ChannelOutput(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("Null channel");
+        }
+        this.channel = channel;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Writes the remaining bytes of every buffer, in a single gathering write if the channel
+     * supports it.
+     */
+    public void write(ByteBuffer... srcs) throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            int last = srcs.length - 1;
+            for (int i = 0; i <= last; ) {
+                gathering.write(srcs, i, srcs.length - i);
+                while ((i <= last) && !srcs[i].hasRemaining()) {
+                    i++;
+                }
+            }
+        } else {
+            for (ByteBuffer src : srcs) {
+                writeFully(src);
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        writeFully(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        one.clear();
+        one.put((byte) b).flip();
+        writeFully(one);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+}
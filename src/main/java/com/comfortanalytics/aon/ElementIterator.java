@@ -0,0 +1,113 @@
+package com.comfortanalytics.aon;
+
+import com.comfortanalytics.aon.Areader.Token;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes the elements of a list one at a time, so only the current element is ever in memory.
+ *
+ * @author Aaron Hansen
+ * @see Areader#elements(String...)
+ */
+class ElementIterator implements Iterator<Adata> {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private boolean done;
+    private boolean pending;
+    private final Areader reader;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Advances the reader to the beginning of the list at the path.
+     *
+     * @param path Keys of nested objects, if none the list must be the current value.
+     * @throws IllegalStateException If the path does not lead to a list.
+     */
+    ElementIterator(Areader reader, String... path) {
+        this.reader = reader;
+        Token token = reader.last();
+        if (token == Token.ROOT) {
+            token = reader.next();
+        }
+        for (String key : path) {
+            if (token != Token.BEGIN_OBJ) {
+                throw new IllegalStateException("Not an object: " + key);
+            }
+            token = find(key);
+            if (token == Token.END_OBJ) {
+                done = true;
+                return;
+            }
+        }
+        if (token != Token.BEGIN_LIST) {
+            throw new IllegalStateException("Not a list");
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean hasNext() {
+        if (done) {
+            return false;
+        }
+        if (!pending) {
+            switch (reader.next()) {
+                case END_LIST:
+                    done = true;
+                    return false;
+                case END_INPUT:
+                    throw new IllegalStateException("Unexpected end of input");
+                case END_OBJ:
+                    throw new IllegalStateException("Unexpected end of object in list");
+            }
+            pending = true;
+        }
+        return true;
+    }
+
+    @Override
+    public Adata next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        return reader.getValue();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Skips members of the current object until the key is found.
+     *
+     * @return The first token of the value for the key, or END_OBJ if the key was not found.
+     */
+    private Token find(String key) {
+        while (true) {
+            switch (reader.next()) {
+                case STRING:
+                    if (key.equals(reader.getString())) {
+                        return reader.next();
+                    }
+                    reader.skipValue();
+                    break;
+                case END_OBJ:
+                    return Token.END_OBJ;
+                default:
+                    throw new IllegalStateException("Expecting a string key or object end");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,1002 @@
+package com.comfortanalytics.aon;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The storage behind an Alist.
+ * <p>
+ * Typed stores hold unboxed primitives and only create Adata when an element is requested as
+ * such.  Mutators return the store to use afterwards, which is this one unless the value needed a
+ * different representation: adding a value of any other type to a typed store converts it to a
+ * generic one.
+ *
+ * @author Aaron Hansen
+ */
+abstract class ListStore {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An empty store that becomes typed if the first value added is a boolean or number.
+     */
+    static final ListStore PENDING = new Pending();
+
+    private static final Adata[] EMPTY = new Adata[0];
+    private static final int INITIAL_CAPACITY = 10;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param val Never null.
+     */
+    abstract ListStore add(Adata val);
+
+    ListStore add(boolean val) {
+        return add(Abool.valueOf(val));
+    }
+
+    ListStore add(double val) {
+        return add(Adouble.valueOf(val));
+    }
+
+    ListStore add(float val) {
+        return add(Afloat.valueOf(val));
+    }
+
+    ListStore add(int val) {
+        return add(Aint.valueOf(val));
+    }
+
+    ListStore add(long val) {
+        return add(Along.valueOf(val));
+    }
+
+    ListStore addAll(ListStore store) {
+        ListStore ret = this;
+        for (int i = 0, len = store.size(); i < len; i++) {
+            ret = ret.add(store.get(i));
+        }
+        return ret;
+    }
+
+    ListStore addAll(boolean[] vals) {
+        if ((size() == 0) && (type() == null)) {
+            return PENDING.addAll(vals);
+        }
+        ListStore ret = this;
+        for (boolean val : vals) {
+            ret = ret.add(val);
+        }
+        return ret;
+    }
+
+    ListStore addAll(double[] vals) {
+        if ((size() == 0) && (type() == null)) {
+            return PENDING.addAll(vals);
+        }
+        ListStore ret = this;
+        for (double val : vals) {
+            ret = ret.add(val);
+        }
+        return ret;
+    }
+
+    ListStore addAll(float[] vals) {
+        if ((size() == 0) && (type() == null)) {
+            return PENDING.addAll(vals);
+        }
+        ListStore ret = this;
+        for (float val : vals) {
+            ret = ret.add(val);
+        }
+        return ret;
+    }
+
+    ListStore addAll(int[] vals) {
+        if ((size() == 0) && (type() == null)) {
+            return PENDING.addAll(vals);
+        }
+        ListStore ret = this;
+        for (int val : vals) {
+            ret = ret.add(val);
+        }
+        return ret;
+    }
+
+    ListStore addAll(long[] vals) {
+        if ((size() == 0) && (type() == null)) {
+            return PENDING.addAll(vals);
+        }
+        ListStore ret = this;
+        for (long val : vals) {
+            ret = ret.add(val);
+        }
+        return ret;
+    }
+
+    static void checkIndex(int idx, int size) {
+        if ((idx < 0) || (idx >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+    }
+
+    abstract void clear();
+
+    /**
+     * A deep copy.
+     */
+    abstract ListStore copy();
+
+    /**
+     * Returns a new empty store for the element type, or a generic store if the type has no
+     * primitive representation.
+     */
+    static ListStore forType(Atype type) {
+        if (type != null) {
+            switch (type) {
+                case BOOLEAN:
+                    return new Booleans(INITIAL_CAPACITY);
+                case DOUBLE:
+                    return new Doubles(INITIAL_CAPACITY);
+                case FLOAT:
+                    return new Floats(INITIAL_CAPACITY);
+                case INT:
+                    return new Ints(INITIAL_CAPACITY);
+                case LONG:
+                    return new Longs(INITIAL_CAPACITY);
+            }
+        }
+        return new Generic();
+    }
+
+    abstract Adata get(int idx);
+
+    boolean getBoolean(int idx) {
+        return get(idx).toBoolean();
+    }
+
+    double getDouble(int idx) {
+        return get(idx).toDouble();
+    }
+
+    float getFloat(int idx) {
+        return get(idx).toFloat();
+    }
+
+    int getInt(int idx) {
+        return get(idx).toInt();
+    }
+
+    long getLong(int idx) {
+        return get(idx).toLong();
+    }
+
+    static int grow(int capacity, int min) {
+        int ret = capacity + (capacity >> 1) + 1;
+        return Math.max(ret, min);
+    }
+
+    abstract Adata remove(int idx);
+
+    /**
+     * @param val Never null.
+     */
+    abstract ListStore set(int idx, Adata val);
+
+    abstract int size();
+
+    /**
+     * A generic store with the same elements, plus room for at least one more.
+     */
+    Generic toGeneric() {
+        int len = size();
+        Generic ret = new Generic(len + 1);
+        for (int i = 0; i < len; i++) {
+            ret.add(get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * The type of every element, or null if the store is generic.
+     */
+    Atype type() {
+        return null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Bits in a long array.
+     */
+    static final class Booleans extends ListStore {
+
+        private long[] bits;
+        private int size;
+
+        Booleans(int capacity) {
+            bits = new long[(capacity + 63) >>> 6];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (val.aonType() == Atype.BOOLEAN) {
+                return add(val.toBoolean());
+            }
+            return toGeneric().add(val);
+        }
+
+        @Override
+        ListStore add(boolean val) {
+            if (size == (bits.length << 6)) {
+                bits = Arrays.copyOf(bits, grow(bits.length, 1));
+            }
+            put(size++, val);
+            return this;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(bits, 0);
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Booleans ret = new Booleans(0);
+            ret.bits = bits.clone();
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            return Abool.valueOf(getBoolean(idx));
+        }
+
+        @Override
+        boolean getBoolean(int idx) {
+            checkIndex(idx, size);
+            return (bits[idx >>> 6] & (1L << idx)) != 0;
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            for (int i = idx + 1; i < size; i++) {
+                put(i - 1, getBoolean(i));
+            }
+            put(--size, false);
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            if (val.aonType() == Atype.BOOLEAN) {
+                checkIndex(idx, size);
+                put(idx, val.toBoolean());
+                return this;
+            }
+            return toGeneric().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Atype type() {
+            return Atype.BOOLEAN;
+        }
+
+        private void put(int idx, boolean val) {
+            if (val) {
+                bits[idx >>> 6] |= 1L << idx;
+            } else {
+                bits[idx >>> 6] &= ~(1L << idx);
+            }
+        }
+
+    }
+
+    static final class Doubles extends ListStore {
+
+        private double[] values;
+        private int size;
+
+        Doubles(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (val.aonType() == Atype.DOUBLE) {
+                return add(val.toDouble());
+            }
+            return toGeneric().add(val);
+        }
+
+        @Override
+        ListStore add(double val) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size, size + 1));
+            }
+            values[size++] = val;
+            return this;
+        }
+
+        @Override
+        ListStore addAll(double[] vals) {
+            if ((size + vals.length) > values.length) {
+                values = Arrays.copyOf(values, grow(size, size + vals.length));
+            }
+            System.arraycopy(vals, 0, values, size, vals.length);
+            size += vals.length;
+            return this;
+        }
+
+        @Override
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Doubles ret = new Doubles(0);
+            ret.values = Arrays.copyOf(values, size);
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            return Adouble.valueOf(getDouble(idx));
+        }
+
+        @Override
+        double getDouble(int idx) {
+            checkIndex(idx, size);
+            return values[idx];
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            System.arraycopy(values, idx + 1, values, idx, --size - idx);
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            if (val.aonType() == Atype.DOUBLE) {
+                checkIndex(idx, size);
+                values[idx] = val.toDouble();
+                return this;
+            }
+            return toGeneric().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Atype type() {
+            return Atype.DOUBLE;
+        }
+
+    }
+
+    static final class Floats extends ListStore {
+
+        private float[] values;
+        private int size;
+
+        Floats(int capacity) {
+            values = new float[capacity];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (val.aonType() == Atype.FLOAT) {
+                return add(val.toFloat());
+            }
+            return toGeneric().add(val);
+        }
+
+        @Override
+        ListStore add(float val) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size, size + 1));
+            }
+            values[size++] = val;
+            return this;
+        }
+
+        @Override
+        ListStore addAll(float[] vals) {
+            if ((size + vals.length) > values.length) {
+                values = Arrays.copyOf(values, grow(size, size + vals.length));
+            }
+            System.arraycopy(vals, 0, values, size, vals.length);
+            size += vals.length;
+            return this;
+        }
+
+        @Override
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Floats ret = new Floats(0);
+            ret.values = Arrays.copyOf(values, size);
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            return Afloat.valueOf(getFloat(idx));
+        }
+
+        @Override
+        double getDouble(int idx) {
+            return getFloat(idx);
+        }
+
+        @Override
+        float getFloat(int idx) {
+            checkIndex(idx, size);
+            return values[idx];
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            System.arraycopy(values, idx + 1, values, idx, --size - idx);
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            if (val.aonType() == Atype.FLOAT) {
+                checkIndex(idx, size);
+                values[idx] = val.toFloat();
+                return this;
+            }
+            return toGeneric().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Atype type() {
+            return Atype.FLOAT;
+        }
+
+    }
+
+    static final class Generic extends ListStore {
+
+        private Adata[] values;
+        private int size;
+
+        Generic() {
+            values = EMPTY;
+        }
+
+        Generic(int capacity) {
+            values = new Adata[capacity];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size, INITIAL_CAPACITY));
+            }
+            values[size++] = val;
+            return this;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Generic ret = new Generic(size);
+            for (int i = 0; i < size; i++) {
+                ret.values[i] = values[i].copy();
+            }
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            checkIndex(idx, size);
+            return values[idx];
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            System.arraycopy(values, idx + 1, values, idx, --size - idx);
+            values[size] = null;
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            checkIndex(idx, size);
+            values[idx] = val;
+            return this;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Generic toGeneric() {
+            return this;
+        }
+
+    }
+
+    static final class Ints extends ListStore {
+
+        private int[] values;
+        private int size;
+
+        Ints(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (val.aonType() == Atype.INT) {
+                return add(val.toInt());
+            }
+            return toGeneric().add(val);
+        }
+
+        @Override
+        ListStore add(int val) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size, size + 1));
+            }
+            values[size++] = val;
+            return this;
+        }
+
+        @Override
+        ListStore addAll(int[] vals) {
+            if ((size + vals.length) > values.length) {
+                values = Arrays.copyOf(values, grow(size, size + vals.length));
+            }
+            System.arraycopy(vals, 0, values, size, vals.length);
+            size += vals.length;
+            return this;
+        }
+
+        @Override
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Ints ret = new Ints(0);
+            ret.values = Arrays.copyOf(values, size);
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            return Aint.valueOf(getInt(idx));
+        }
+
+        @Override
+        double getDouble(int idx) {
+            return getInt(idx);
+        }
+
+        @Override
+        int getInt(int idx) {
+            checkIndex(idx, size);
+            return values[idx];
+        }
+
+        @Override
+        long getLong(int idx) {
+            return getInt(idx);
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            System.arraycopy(values, idx + 1, values, idx, --size - idx);
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            if (val.aonType() == Atype.INT) {
+                checkIndex(idx, size);
+                values[idx] = val.toInt();
+                return this;
+            }
+            return toGeneric().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Atype type() {
+            return Atype.INT;
+        }
+
+    }
+
+    /**
+     * Decodes the elements from the source on first access, and then forwards to the decoded
+     * store.  Mutators return the decoded store so the list stops forwarding.
+     */
+    static final class Lazy extends ListStore {
+
+        private ListStore decoded;
+        private Supplier<Agroup> source;
+
+        Lazy(Supplier<Agroup> source) {
+            this.source = source;
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore add(boolean val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore add(double val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore add(float val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore add(int val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore add(long val) {
+            return decoded().add(val);
+        }
+
+        @Override
+        ListStore addAll(ListStore store) {
+            return decoded().addAll(store);
+        }
+
+        @Override
+        ListStore addAll(boolean[] vals) {
+            return decoded().addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(double[] vals) {
+            return decoded().addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(float[] vals) {
+            return decoded().addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(int[] vals) {
+            return decoded().addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(long[] vals) {
+            return decoded().addAll(vals);
+        }
+
+        @Override
+        void clear() {
+            source = null;
+            decoded = PENDING;
+        }
+
+        @Override
+        ListStore copy() {
+            if (source != null) {
+                //the encoded bytes are never modified
+                return new Lazy(source);
+            }
+            return decoded.copy();
+        }
+
+        @Override
+        Adata get(int idx) {
+            return decoded().get(idx);
+        }
+
+        @Override
+        boolean getBoolean(int idx) {
+            return decoded().getBoolean(idx);
+        }
+
+        @Override
+        double getDouble(int idx) {
+            return decoded().getDouble(idx);
+        }
+
+        @Override
+        float getFloat(int idx) {
+            return decoded().getFloat(idx);
+        }
+
+        @Override
+        int getInt(int idx) {
+            return decoded().getInt(idx);
+        }
+
+        @Override
+        long getLong(int idx) {
+            return decoded().getLong(idx);
+        }
+
+        @Override
+        Adata remove(int idx) {
+            return decoded().remove(idx);
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            return decoded().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return decoded().size();
+        }
+
+        @Override
+        Generic toGeneric() {
+            return decoded().toGeneric();
+        }
+
+        @Override
+        Atype type() {
+            return decoded().type();
+        }
+
+        private ListStore decoded() {
+            if (source != null) {
+                decoded = ((Alist) source.get()).getStore();
+                source = null;
+            }
+            return decoded;
+        }
+
+    }
+
+    static final class Longs extends ListStore {
+
+        private long[] values;
+        private int size;
+
+        Longs(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        ListStore add(Adata val) {
+            if (val.aonType() == Atype.LONG) {
+                return add(val.toLong());
+            }
+            return toGeneric().add(val);
+        }
+
+        @Override
+        ListStore add(long val) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size, size + 1));
+            }
+            values[size++] = val;
+            return this;
+        }
+
+        @Override
+        ListStore addAll(long[] vals) {
+            if ((size + vals.length) > values.length) {
+                values = Arrays.copyOf(values, grow(size, size + vals.length));
+            }
+            System.arraycopy(vals, 0, values, size, vals.length);
+            size += vals.length;
+            return this;
+        }
+
+        @Override
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        ListStore copy() {
+            Longs ret = new Longs(0);
+            ret.values = Arrays.copyOf(values, size);
+            ret.size = size;
+            return ret;
+        }
+
+        @Override
+        Adata get(int idx) {
+            return Along.valueOf(getLong(idx));
+        }
+
+        @Override
+        double getDouble(int idx) {
+            return getLong(idx);
+        }
+
+        @Override
+        long getLong(int idx) {
+            checkIndex(idx, size);
+            return values[idx];
+        }
+
+        @Override
+        Adata remove(int idx) {
+            Adata ret = get(idx);
+            System.arraycopy(values, idx + 1, values, idx, --size - idx);
+            return ret;
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            if (val.aonType() == Atype.LONG) {
+                checkIndex(idx, size);
+                values[idx] = val.toLong();
+                return this;
+            }
+            return toGeneric().set(idx, val);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Atype type() {
+            return Atype.LONG;
+        }
+
+    }
+
+    /**
+     * Always empty, the first value added determines the store that replaces it.
+     */
+    private static final class Pending extends ListStore {
+
+        @Override
+        ListStore add(Adata val) {
+            return new Generic().add(val);
+        }
+
+        @Override
+        ListStore add(boolean val) {
+            return new Booleans(INITIAL_CAPACITY).add(val);
+        }
+
+        @Override
+        ListStore add(double val) {
+            return new Doubles(INITIAL_CAPACITY).add(val);
+        }
+
+        @Override
+        ListStore add(float val) {
+            return new Floats(INITIAL_CAPACITY).add(val);
+        }
+
+        @Override
+        ListStore add(int val) {
+            return new Ints(INITIAL_CAPACITY).add(val);
+        }
+
+        @Override
+        ListStore add(long val) {
+            return new Longs(INITIAL_CAPACITY).add(val);
+        }
+
+        @Override
+        ListStore addAll(boolean[] vals) {
+            return new Booleans(vals.length).addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(double[] vals) {
+            return new Doubles(vals.length).addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(float[] vals) {
+            return new Floats(vals.length).addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(int[] vals) {
+            return new Ints(vals.length).addAll(vals);
+        }
+
+        @Override
+        ListStore addAll(long[] vals) {
+            return new Longs(vals.length).addAll(vals);
+        }
+
+        @Override
+        void clear() {
+        }
+
+        @Override
+        ListStore copy() {
+            return this;
+        }
+
+        @Override
+        Adata get(int idx) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: 0");
+        }
+
+        @Override
+        Adata remove(int idx) {
+            return get(idx);
+        }
+
+        @Override
+        ListStore set(int idx, Adata val) {
+            get(idx);
+            return this;
+        }
+
+        @Override
+        int size() {
+            return 0;
+        }
+
+    }
+
+}
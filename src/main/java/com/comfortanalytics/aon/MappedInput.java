@@ -0,0 +1,186 @@
+package com.comfortanalytics.aon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An InputStream over a ByteBuffer, or over a file that is memory mapped.
+ * <p>
+ * Mapped files are read straight from the page cache: there are no read system calls and no
+ * intermediate buffer between the file and the reader.  Files are mapped in windows so that
+ * ones larger than 2GB can be read, and each window is unmapped by the garbage collector once
+ * the reader moves past it.
+ * <p>
+ * The File constructors of the readers use this for files of at least MAP_THRESHOLD bytes.
+ *
+ * @author Aaron Hansen
+ */
+public class MappedInput extends InputStream {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default size of each mapped window of a file.
+     */
+    public static final int DEFAULT_WINDOW = 1 << 30;
+
+    /**
+     * Smaller files are read with a FileInputStream by open(File).
+     */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private ByteBuffer buf;
+    private long bufPos;
+    private final FileChannel channel;
+    private final long length;
+    private final int window;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the remaining bytes of the buffer, which will not be modified.
+     */
+    public MappedInput(ByteBuffer buf) {
+        this.buf = buf.slice();
+        this.channel = null;
+        this.length = this.buf.remaining();
+        this.window = 0;
+    }
+
+    public MappedInput(File file) {
+        this(file, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param file   The file to read.
+     * @param window The maximum number of bytes to map at once.
+     */
+    public MappedInput(File file, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            length = channel.size();
+            buf = map(0);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int available() {
+        return (int) Math.min(length - position(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = ByteBuffer.allocate(0);
+        bufPos = length;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns a mapped input for files of at least MAP_THRESHOLD bytes, otherwise a
+     * FileInputStream.
+     */
+    public static InputStream open(File file) {
+        try {
+            if (file.length() >= MAP_THRESHOLD) {
+                return new MappedInput(file);
+            }
+            return new FileInputStream(file);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * The number of bytes consumed.
+     */
+    public long position() {
+        return bufPos + buf.position();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buf.hasRemaining() && !remap()) {
+            return -1;
+        }
+        return buf.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buf.hasRemaining() && !remap()) {
+            return -1;
+        }
+        len = Math.min(len, buf.remaining());
+        buf.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        n = Math.min(n, length - position());
+        if (n <= buf.remaining()) {
+            buf.position(buf.position() + (int) n);
+        } else {
+            buf = map(position() + n);
+        }
+        return n;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Maps the window beginning at the given position of the file.
+     */
+    private ByteBuffer map(long pos) throws IOException {
+        bufPos = pos;
+        long size = Math.min(window, length - pos);
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+    }
+
+    /**
+     * Maps the next window.
+     *
+     * @return False at the end of the file.
+     */
+    private boolean remap() throws IOException {
+        if ((channel == null) || (position() >= length)) {
+            return false;
+        }
+        buf = map(position());
+        return true;
+    }
+
+}
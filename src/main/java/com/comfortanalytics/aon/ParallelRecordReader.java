@@ -0,0 +1,606 @@
+package com.comfortanalytics.aon;
+
+import com.comfortanalytics.aon.Areader.Token;
+import com.comfortanalytics.aon.io.AonReader;
+import com.comfortanalytics.aon.json.JsonUtf8Reader;
+import com.comfortanalytics.aon.msgpack.MsgPackReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Decodes a stream of concatenated records on multiple threads.
+ * <p>
+ * The input is split into chunks at record boundaries, and each chunk is decoded by its own
+ * reader on the executor.  Json input is split at newlines, so it must be newline delimited.
+ * Aon and MsgPack input is split by skipping over records, which is much faster than decoding
+ * them.  All readers share one SymbolTable.
+ * <p>
+ * Input can be an array, a ByteBuffer, a file or a stream of json.  Files are memory mapped
+ * and split without being read into the heap, so they can be larger than 2GB.
+ * <p>
+ * Records are always delivered on the calling thread, either in the order of the input or in
+ * the order chunks finish decoding.  No more than the parallelism number of chunks are decoded
+ * or waiting to be delivered at once, which bounds memory use.
+ *
+ * @author Aaron Hansen
+ * @see RecordReader
+ * @see RecordWriter
+ */
+public class ParallelRecordReader {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default target size of a chunk, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final byte[] buf;
+    private int bufOff;
+    private final int bufEnd;
+    private byte[] carry;
+    private int carryLen;
+    private final FileChannel channel;
+    private int chunkLen;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Executor executor = ForkJoinPool.commonPool();
+    private final ReaderFactory factory;
+    private final InputStream in;
+    private long mappedEnd;
+    private long mappedOff;
+    private final boolean newlines;
+    private boolean ordered = true;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ByteBuffer region;
+    private long regionPos;
+    private MappedInput scan;
+    private AbstractReader scanner;
+    private int scannerOff;
+    private final StreamFactory streams;
+    private final SymbolTable symbols = new SymbolTable();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    private ParallelRecordReader(ReaderFactory factory, boolean newlines, byte[] buf, int off,
+                                 int len) {
+        if ((off < 0) || (len < 0) || ((off + len) > buf.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.factory = factory;
+        this.newlines = newlines;
+        this.buf = buf;
+        this.bufOff = off;
+        this.bufEnd = off + len;
+        this.channel = null;
+        this.in = null;
+        this.streams = null;
+    }
+
+    private ParallelRecordReader(ReaderFactory factory, InputStream in) {
+        this.factory = factory;
+        this.newlines = true;
+        this.buf = null;
+        this.bufEnd = 0;
+        this.channel = null;
+        this.in = in;
+        this.streams = null;
+    }
+
+    /**
+     * Splits a buffer that is not backed by an array.
+     */
+    private ParallelRecordReader(StreamFactory streams, boolean newlines, ByteBuffer buf) {
+        this.factory = null;
+        this.newlines = newlines;
+        this.buf = null;
+        this.bufEnd = 0;
+        this.channel = null;
+        this.in = null;
+        this.streams = streams;
+        this.region = buf.slice();
+        this.mappedEnd = region.remaining();
+        this.scan = new MappedInput(region);
+    }
+
+    /**
+     * Splits a file, mapping one window at a time.
+     */
+    private ParallelRecordReader(StreamFactory streams, boolean newlines, File file) {
+        this.factory = null;
+        this.newlines = newlines;
+        this.buf = null;
+        this.bufEnd = 0;
+        this.in = null;
+        this.streams = streams;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.mappedEnd = channel.size();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        this.region = ByteBuffer.allocate(0);
+        this.scan = new MappedInput(file);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Decodes back to back Aon documents, the array will not be copied.
+     */
+    public static ParallelRecordReader aon(byte[] buf) {
+        return new ParallelRecordReader(AonReader::new, false, buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes back to back Aon documents in the remaining bytes of the buffer, such as one that
+     * is memory mapped.  Buffers backed by an array are decoded in place.
+     */
+    public static ParallelRecordReader aon(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return new ParallelRecordReader(AonReader::new, false, buf.array(),
+                                            buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        return new ParallelRecordReader(AonReader::new, false, buf);
+    }
+
+    /**
+     * Decodes back to back Aon documents in a file, which is memory mapped.
+     */
+    public static ParallelRecordReader aon(File file) {
+        return new ParallelRecordReader(AonReader::new, false, file);
+    }
+
+    /**
+     * Decodes all records, delivering each to the action on the calling thread.  Can only be
+     * called once.
+     *
+     * @throws RuntimeException Whatever was thrown decoding a chunk, or wrapping it if checked.
+     */
+    public void forEach(Consumer<? super Agroup> action) {
+        try {
+            if (ordered) {
+                forEachOrdered(action);
+            } else {
+                forEachUnordered(action);
+            }
+        } finally {
+            closeMapped();
+        }
+    }
+
+    /**
+     * Decodes newline delimited json, the array will not be copied.
+     */
+    public static ParallelRecordReader json(byte[] buf) {
+        return new ParallelRecordReader(JsonUtf8Reader::new, true, buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes newline delimited json in the remaining bytes of the buffer, such as one that is
+     * memory mapped.  Buffers backed by an array are decoded in place.
+     */
+    public static ParallelRecordReader json(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return new ParallelRecordReader(JsonUtf8Reader::new, true, buf.array(),
+                                            buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        return new ParallelRecordReader(JsonUtf8Reader::new, true, buf);
+    }
+
+    /**
+     * Decodes a newline delimited json file, which is memory mapped.
+     */
+    public static ParallelRecordReader json(File file) {
+        return new ParallelRecordReader(JsonUtf8Reader::new, true, file);
+    }
+
+    /**
+     * Decodes newline delimited json from a stream, which is read in chunks on the calling
+     * thread.  The stream is not closed.
+     */
+    public static ParallelRecordReader json(InputStream in) {
+        return new ParallelRecordReader(JsonUtf8Reader::new, in);
+    }
+
+    /**
+     * Decodes back to back MsgPack documents, the array will not be copied.
+     */
+    public static ParallelRecordReader msgPack(byte[] buf) {
+        return new ParallelRecordReader(MsgPackReader::new, false, buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes back to back MsgPack documents in the remaining bytes of the buffer, such as one
+     * that is memory mapped.  Buffers backed by an array are decoded in place.
+     */
+    public static ParallelRecordReader msgPack(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return new ParallelRecordReader(MsgPackReader::new, false, buf.array(),
+                                            buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        return new ParallelRecordReader(MsgPackReader::new, false, buf);
+    }
+
+    /**
+     * Decodes back to back MsgPack documents in a file, which is memory mapped.
+     */
+    public static ParallelRecordReader msgPack(File file) {
+        return new ParallelRecordReader(MsgPackReader::new, false, file);
+    }
+
+    /**
+     * The target number of bytes in each chunk, chunks will be larger when a single record is
+     * larger.  The default is DEFAULT_CHUNK_SIZE.
+     *
+     * @return This
+     */
+    public ParallelRecordReader setChunkSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + size);
+        }
+        chunkSize = size;
+        return this;
+    }
+
+    /**
+     * Where chunks are decoded, the common ForkJoinPool by default.
+     *
+     * @return This
+     */
+    public ParallelRecordReader setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Whether or not records are delivered in the order of the input, true by default.  When
+     * false, each chunk is delivered as soon as it is decoded.
+     *
+     * @return This
+     */
+    public ParallelRecordReader setOrdered(boolean arg) {
+        ordered = arg;
+        return this;
+    }
+
+    /**
+     * The maximum number of chunks being decoded or waiting to be delivered, the number of
+     * available processors by default.
+     *
+     * @return This
+     */
+    public ParallelRecordReader setParallelism(int arg) {
+        if (arg < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + arg);
+        }
+        parallelism = arg;
+        return this;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static void cancel(Iterable<Future<List<Agroup>>> futures) {
+        for (Future<List<Agroup>> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Closes the file, chunks that have already been mapped remain readable.
+     */
+    private void closeMapped() {
+        try {
+            if (scan != null) {
+                scan.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Decodes every record in the chunk.
+     */
+    private List<Agroup> decode(AbstractReader reader) {
+        reader.setSymbolTable(symbols);
+        RecordReader records = new RecordReader(reader);
+        List<Agroup> ret = new ArrayList<>();
+        while (records.hasNext()) {
+            ret.add(records.next());
+        }
+        return ret;
+    }
+
+    private static void deliver(Future<List<Agroup>> future, Consumer<? super Agroup> action) {
+        List<Agroup> records;
+        try {
+            records = future.get();
+        } catch (ExecutionException x) {
+            if (x.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) x.getCause();
+            }
+            throw new RuntimeException(x.getCause());
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(x);
+        }
+        for (Agroup record : records) {
+            action.accept(record);
+        }
+    }
+
+    private void forEachOrdered(Consumer<? super Agroup> action) {
+        ArrayDeque<Future<List<Agroup>>> pending = new ArrayDeque<>();
+        try {
+            Future<List<Agroup>> chunk;
+            while ((chunk = submitNext(null)) != null) {
+                pending.add(chunk);
+                if (pending.size() >= parallelism) {
+                    deliver(pending.remove(), action);
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.remove(), action);
+            }
+        } finally {
+            cancel(pending);
+        }
+    }
+
+    private void forEachUnordered(Consumer<? super Agroup> action) {
+        CompletionService<List<Agroup>> service = new ExecutorCompletionService<>(executor);
+        Set<Future<List<Agroup>>> pending = new HashSet<>();
+        try {
+            Future<List<Agroup>> chunk;
+            while ((chunk = submitNext(service)) != null) {
+                pending.add(chunk);
+                if (pending.size() >= parallelism) {
+                    chunk = service.take();
+                    pending.remove(chunk);
+                    deliver(chunk, action);
+                }
+            }
+            while (!pending.isEmpty()) {
+                chunk = service.take();
+                pending.remove(chunk);
+                deliver(chunk, action);
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(x);
+        } finally {
+            cancel(pending);
+        }
+    }
+
+    /**
+     * Returns a view of the next chunk of mapped input.  Chunks within the current region share
+     * its mapping, otherwise a new region of the file is mapped beginning with the chunk.
+     */
+    private ByteBuffer mapChunk(long off, long len) throws IOException {
+        if ((off + len) > (regionPos + region.capacity())) {
+            if (len > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Record too large: " + len);
+            }
+            long size = Math.min(Math.max(MappedInput.DEFAULT_WINDOW, len), mappedEnd - off);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, off, size);
+            regionPos = off;
+        }
+        ByteBuffer ret = region.duplicate();
+        ret.position((int) (off - regionPos));
+        ret.limit((int) (off - regionPos + len));
+        return ret.slice();
+    }
+
+    /**
+     * Reads the next chunk of newline delimited json from the stream, carrying any partial
+     * record over to the next chunk.  The length of the chunk is stored in chunkLen.
+     *
+     * @return Null at the end of the stream.
+     */
+    private byte[] readChunk() throws IOException {
+        byte[] ret = new byte[Math.max(chunkSize, carryLen * 2)];
+        int len = carryLen;
+        if (len > 0) {
+            System.arraycopy(carry, 0, ret, 0, len);
+        }
+        while (true) {
+            int count = in.read(ret, len, ret.length - len);
+            if (count < 0) {
+                carryLen = 0;
+                if (len == 0) {
+                    return null;
+                }
+                chunkLen = len;
+                return ret;
+            }
+            len += count;
+            if (len < ret.length) {
+                continue;
+            }
+            int nl = len;
+            while ((nl > 0) && (ret[nl - 1] != '\n')) {
+                nl--;
+            }
+            if (nl > 0) {
+                carryLen = len - nl;
+                if ((carry == null) || (carry.length < carryLen)) {
+                    carry = new byte[Math.max(carryLen, 1024)];
+                }
+                System.arraycopy(ret, nl, carry, 0, carryLen);
+                chunkLen = nl;
+                return ret;
+            }
+            //a single record larger than the chunk
+            ret = Arrays.copyOf(ret, ret.length * 2);
+        }
+    }
+
+    /**
+     * Splits the next chunk from the input and submits it for decoding.
+     *
+     * @param service If not null, used to submit the task.
+     * @return Null when there is nothing left.
+     */
+    private Future<List<Agroup>> submitNext(CompletionService<List<Agroup>> service) {
+        Callable<List<Agroup>> decoder;
+        if (in != null) {
+            byte[] chunkBuf;
+            try {
+                chunkBuf = readChunk();
+            } catch (IOException x) {
+                throw new RuntimeException(x);
+            }
+            if (chunkBuf == null) {
+                return null;
+            }
+            int len = chunkLen;
+            decoder = () -> decode(factory.newReader(chunkBuf, 0, len));
+        } else if (scan != null) {
+            if (mappedOff >= mappedEnd) {
+                return null;
+            }
+            ByteBuffer chunk;
+            try {
+                long end = splitMapped();
+                chunk = mapChunk(mappedOff, end - mappedOff);
+                mappedOff = end;
+            } catch (IOException x) {
+                throw new RuntimeException(x);
+            }
+            decoder = () -> decode(streams.newReader(new MappedInput(chunk)));
+        } else {
+            if (bufOff >= bufEnd) {
+                return null;
+            }
+            int end = splitArray();
+            int off = bufOff;
+            int len = end - bufOff;
+            bufOff = end;
+            decoder = () -> decode(factory.newReader(buf, off, len));
+        }
+        if (service != null) {
+            return service.submit(decoder);
+        }
+        FutureTask<List<Agroup>> task = new FutureTask<>(decoder);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Returns the index after the last byte of the next chunk in the array.  Json is split after
+     * a newline, otherwise records are skipped until one begins past the chunk size.
+     */
+    private int splitArray() {
+        if ((bufEnd - bufOff) <= chunkSize) {
+            return bufEnd;
+        }
+        int limit = bufOff + chunkSize;
+        if (newlines) {
+            while ((limit < bufEnd) && (buf[limit - 1] != '\n')) {
+                limit++;
+            }
+            return limit;
+        }
+        if (scanner == null) {
+            scanner = factory.newReader(buf, bufOff, bufEnd - bufOff);
+            scannerOff = bufOff;
+        }
+        while (scanner.skipValue() != Token.END_INPUT) {
+            int start = scannerOff + (int) scanner.getOffset();
+            if (start >= limit) {
+                return start;
+            }
+        }
+        return bufEnd;
+    }
+
+    /**
+     * Returns the position after the last byte of the next chunk of mapped input, found the same
+     * way as splitArray but by scanning forward through the input.
+     */
+    private long splitMapped() throws IOException {
+        if ((mappedEnd - mappedOff) <= chunkSize) {
+            return mappedEnd;
+        }
+        long limit = mappedOff + chunkSize;
+        if (newlines) {
+            scan.skip(limit - 1 - scan.position());
+            int ch = scan.read();
+            while ((ch >= 0) && (ch != '\n')) {
+                ch = scan.read();
+            }
+            return scan.position();
+        }
+        if (scanner == null) {
+            scanner = streams.newReader(scan);
+        }
+        while (scanner.skipValue() != Token.END_INPUT) {
+            long start = scanner.getOffset();
+            if (start >= limit) {
+                return start;
+            }
+        }
+        return mappedEnd;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a reader for a range of an array.
+     */
+    private interface ReaderFactory {
+
+        AbstractReader newReader(byte[] buf, int off, int len);
+
+    }
+
+    /**
+     * Creates a reader for a stream.
+     */
+    private interface StreamFactory {
+
+        AbstractReader newReader(InputStream in);
+
+    }
+
+}
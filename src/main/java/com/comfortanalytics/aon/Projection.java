@@ -0,0 +1,129 @@
+package com.comfortanalytics.aon;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects the parts of a document to decode, everything else is skipped by the reader without
+ * being decoded.
+ * <p>
+ * Paths are keys separated by dots, and [*] selects every element of a list.  For example,
+ * {@code a.b} selects the member b of the object a, and {@code items[*].id} selects the member id
+ * of every object in the list items.  A path that begins with [*] selects elements of a root
+ * list.  Selecting a path includes everything beneath it.
+ * <p>
+ * Objects only contain the selected members that are present, and lists only contain the
+ * selected elements, so element indices are not preserved.  Instances are immutable once
+ * constructed and can be shared by many readers.
+ *
+ * @author Aaron Hansen
+ * @see AbstractReader#getObj(Projection)
+ * @see AbstractReader#getList(Projection)
+ */
+public class Projection {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final Node root = new Node();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param paths Such as {@code a.b} or {@code items[*].id}.
+     * @throws IllegalArgumentException If a path is malformed.
+     */
+    public Projection(String... paths) {
+        for (String path : paths) {
+            add(path);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    Node getRoot() {
+        return root;
+    }
+
+    private void add(String path) {
+        if ((path == null) || path.isEmpty()) {
+            throw new IllegalArgumentException("Empty path");
+        }
+        Node node = root;
+        int idx = 0;
+        int len = path.length();
+        while (idx < len) {
+            char ch = path.charAt(idx);
+            if (ch == '[') {
+                if (!path.startsWith("[*]", idx)) {
+                    throw new IllegalArgumentException("Expecting [*]: " + path);
+                }
+                if (node.elements == null) {
+                    node.elements = new Node();
+                }
+                node = node.elements;
+                idx += 3;
+                if ((idx < len) && (path.charAt(idx) != '.') && (path.charAt(idx) != '[')) {
+                    throw new IllegalArgumentException("Expecting . after [*]: " + path);
+                }
+            } else if ((ch == '.') && (node != root)) {
+                if ((++idx == len) || (path.charAt(idx) == '.') || (path.charAt(idx) == '[')) {
+                    throw new IllegalArgumentException("Empty key: " + path);
+                }
+            } else {
+                int end = idx;
+                while ((end < len) && (path.charAt(end) != '.') && (path.charAt(end) != '[')) {
+                    end++;
+                }
+                if (end == idx) {
+                    throw new IllegalArgumentException("Empty key: " + path);
+                }
+                if (node.keys == null) {
+                    node.keys = new HashMap<>();
+                }
+                node = node.keys.computeIfAbsent(path.substring(idx, end), k -> new Node());
+                idx = end;
+            }
+        }
+        node.all = true;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A position in the document.
+     */
+    static class Node {
+
+        /**
+         * Everything beneath this is selected.
+         */
+        boolean all;
+
+        /**
+         * What to select in each element of a list, or null.
+         */
+        Node elements;
+
+        /**
+         * What to select from the members of an object, or null.
+         */
+        Map<String, Node> keys;
+
+        Node get(String key) {
+            if (keys == null) {
+                return null;
+            }
+            return keys.get(key);
+        }
+
+    }
+
+}
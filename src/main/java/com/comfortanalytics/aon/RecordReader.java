@@ -0,0 +1,111 @@
+package com.comfortanalytics.aon;
+
+import com.comfortanalytics.aon.Areader.Token;
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes a stream of concatenated documents one record at a time, such as newline delimited
+ * json or back to back Aon or MsgPack documents.
+ * <p>
+ * Every record is decoded by the same reader, so its buffer and symbol table are reused across
+ * records.  The offset of each record is tracked so that one which fails to decode can be
+ * located and re-read, however the reader can not continue past such a record.
+ *
+ * @author Aaron Hansen
+ * @see RecordWriter
+ */
+public class RecordReader implements Closeable, Iterator<Agroup> {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private long count;
+    private boolean done;
+    private long offset = -1;
+    private boolean pending;
+    private final Areader reader;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public RecordReader(Areader reader) {
+        this.reader = reader;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Closes the underlying reader.
+     */
+    @Override
+    public void close() {
+        reader.close();
+    }
+
+    /**
+     * The number of records returned by next().
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The position in the input of the current record: the one found by hasNext(), or if next()
+     * failed, the record that could not be decoded.
+     *
+     * @return -1 if there is no record, or the reader doesn't track offsets.
+     * @see Areader#getOffset()
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Finds the beginning of the next record.
+     *
+     * @throws IllegalStateException If the input contains something other than lists and objects
+     *                               between records.
+     */
+    @Override
+    public boolean hasNext() {
+        if (pending) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        Token token = reader.next();
+        if (token == Token.END_INPUT) {
+            done = true;
+            offset = -1;
+            return false;
+        }
+        if ((token != Token.BEGIN_LIST) && (token != Token.BEGIN_OBJ)) {
+            throw new IllegalStateException("Expecting a list or object, not " + token);
+        }
+        offset = reader.getOffset();
+        pending = true;
+        return true;
+    }
+
+    /**
+     * Decodes the next record.
+     */
+    @Override
+    public Agroup next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        Agroup ret = reader.getValue().toGroup();
+        count++;
+        return ret;
+    }
+
+}
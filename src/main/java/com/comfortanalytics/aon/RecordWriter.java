@@ -0,0 +1,95 @@
+package com.comfortanalytics.aon;
+
+import java.io.Closeable;
+import java.io.Flushable;
+
+/**
+ * Appends records to a stream of concatenated documents, such as newline delimited json or back
+ * to back Aon or MsgPack documents.
+ * <p>
+ * Every record is encoded by the same writer, so its buffer is reused across records.  The
+ * only framing is what the format requires between documents: a newline for json and nothing
+ * for the binary formats.  Records are sent to the output whenever the writer's buffer fills,
+ * and optionally flushed after a fixed number of records so that readers of the output don't
+ * wait on a slow producer.
+ *
+ * @author Aaron Hansen
+ * @see RecordReader
+ */
+public class RecordWriter implements Closeable, Flushable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private long count;
+    private int flushInterval;
+    private final AbstractWriter writer;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public RecordWriter(AbstractWriter writer) {
+        this.writer = writer;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Closes the underlying writer.
+     */
+    @Override
+    public void close() {
+        writer.close();
+    }
+
+    @Override
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * The number of records written.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The number of records between flushes, or 0 if never flushed automatically.
+     */
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Flush the writer after every interval records, 0 by default which means never.
+     *
+     * @return This
+     */
+    public RecordWriter setFlushInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Negative interval: " + interval);
+        }
+        flushInterval = interval;
+        return this;
+    }
+
+    /**
+     * Encodes the record as a complete document.
+     *
+     * @return This
+     */
+    public RecordWriter write(Agroup record) {
+        writer.value(record).endRecord();
+        count++;
+        if ((flushInterval > 0) && ((count % flushInterval) == 0)) {
+            writer.flush();
+        }
+        return this;
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.comfortanalytics.aon;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Canonicalizes strings decoded by readers, so that repeated object keys share a single String
+ * instance.
+ * <p>
+ * Lookups hash the raw UTF-8 bytes or chars, and when the string is already in the table it is
+ * returned without allocating anything.  The table is a fixed size cache: a new string replaces
+ * whatever was in its slot, so memory is bounded no matter how many distinct strings are seen.
+ * Strings decoded from bytes and from chars are cached separately.
+ * <p>
+ * By default every reader creates its own table, which is only used for object keys.  A single
+ * table can be shared by many readers, and it is safe to use from multiple threads.
+ *
+ * @author Aaron Hansen
+ * @see AbstractReader#setSymbolTable(SymbolTable)
+ * @see AbstractReader#setSymbolValues(boolean)
+ */
+public class SymbolTable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of slots in a table created with the default constructor.
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    /**
+     * Longer strings are never cached.
+     */
+    public static final int MAX_LENGTH = 128;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final Entry[] byteEntries;
+    private final Entry[] charEntries;
+    private final int mask;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public SymbolTable() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size The maximum number of strings from each of bytes and chars, will be rounded up
+     *             to a power of two.
+     */
+    public SymbolTable(int size) {
+        int cap = 16;
+        while (cap < size) {
+            cap <<= 1;
+        }
+        byteEntries = new Entry[cap];
+        charEntries = new Entry[cap];
+        mask = cap - 1;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Removes all strings from the table.
+     */
+    public void clear() {
+        Arrays.fill(byteEntries, null);
+        Arrays.fill(charEntries, null);
+    }
+
+    /**
+     * Returns the string for the UTF-8 encoded bytes.
+     */
+    public String get(byte[] buf, int off, int len) {
+        if (len == 0) {
+            return "";
+        }
+        if (len > MAX_LENGTH) {
+            return new String(buf, off, len, StandardCharsets.UTF_8);
+        }
+        int hash = 0;
+        int bits = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            hash = (31 * hash) + buf[i];
+            bits |= buf[i];
+        }
+        int idx = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = byteEntries[idx];
+        if ((entry != null) && (entry.hash == hash) && entry.equals(buf, off, len)) {
+            return entry.value;
+        }
+        String ret;
+        if ((bits & 0x80) == 0) {
+            ret = new String(buf, off, len, StandardCharsets.ISO_8859_1);
+        } else {
+            ret = new String(buf, off, len, StandardCharsets.UTF_8);
+        }
+        byteEntries[idx] = new Entry(hash, Arrays.copyOfRange(buf, off, off + len), ret);
+        return ret;
+    }
+
+    /**
+     * Returns the string for the chars.
+     */
+    public String get(char[] buf, int off, int len) {
+        if (len == 0) {
+            return "";
+        }
+        if (len > MAX_LENGTH) {
+            return new String(buf, off, len);
+        }
+        int hash = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            hash = (31 * hash) + buf[i];
+        }
+        int idx = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = charEntries[idx];
+        if ((entry != null) && (entry.hash == hash) && entry.equals(buf, off, len)) {
+            return entry.value;
+        }
+        String ret = new String(buf, off, len);
+        charEntries[idx] = new Entry(hash, null, ret);
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Immutable so that it can be shared between threads without synchronization.
+     */
+    private static class Entry {
+
+        final byte[] bytes;
+        final int hash;
+        final String value;
+
+        Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        boolean equals(byte[] buf, int off, int len) {
+            byte[] b = bytes;
+            if (b.length != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (b[i] != buf[off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean equals(char[] buf, int off, int len) {
+            String s = value;
+            if (s.length() != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (s.charAt(i) != buf[off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
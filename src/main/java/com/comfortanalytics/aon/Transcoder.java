@@ -0,0 +1,115 @@
+package com.comfortanalytics.aon;
+
+import com.comfortanalytics.aon.Areader.Token;
+import java.util.Arrays;
+
+/**
+ * Copies tokens from a reader to a writer, so a document can be converted between formats
+ * without decoding it into a tree.  Primitives are passed through their getters, no Adata is
+ * created.
+ *
+ * @author Aaron Hansen
+ * @see Aon#transcode(Areader, Awriter)
+ */
+class Transcoder {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Transcoder() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies one complete value, which is the current value of the reader unless it is at the
+     * root or the end of a list or object, in which case it is the next value.
+     *
+     * @return False if the reader was at the end of input.
+     */
+    static boolean transcode(Areader in, Awriter out) {
+        Token token = in.last();
+        if ((token == Token.ROOT) || (token == Token.END_LIST) || (token == Token.END_OBJ)) {
+            token = in.next();
+        }
+        if (token == Token.END_INPUT) {
+            return false;
+        }
+        boolean[] objs = new boolean[16];
+        int depth = 0;
+        boolean keyNext = false;
+        while (true) {
+            if (keyNext && (token != Token.END_OBJ)) {
+                if (token != Token.STRING) {
+                    throw new IllegalStateException("Expecting a key, not " + token);
+                }
+                out.key(in.getString());
+                token = in.next();
+            }
+            switch (token) {
+                case BEGIN_LIST:
+                case BEGIN_OBJ:
+                    boolean obj = token == Token.BEGIN_OBJ;
+                    if (obj) {
+                        out.beginObj();
+                    } else {
+                        out.beginList();
+                    }
+                    if (depth == objs.length) {
+                        objs = Arrays.copyOf(objs, depth * 2);
+                    }
+                    objs[depth++] = obj;
+                    break;
+                case END_LIST:
+                    out.endList();
+                    depth--;
+                    break;
+                case END_OBJ:
+                    out.endObj();
+                    depth--;
+                    break;
+                case BIGINT:
+                    out.value(in.getBigInt());
+                    break;
+                case BINARY:
+                    out.value(in.getBinary());
+                    break;
+                case BOOLEAN:
+                    out.value(in.getBoolean());
+                    break;
+                case DECIMAL:
+                    out.value(in.getBigDecimal());
+                    break;
+                case DOUBLE:
+                    out.value(in.getDouble());
+                    break;
+                case FLOAT:
+                    out.value(in.getFloat());
+                    break;
+                case INT:
+                    out.value(in.getInt());
+                    break;
+                case LONG:
+                    out.value(in.getLong());
+                    break;
+                case NULL:
+                    out.value((String) null);
+                    break;
+                case STRING:
+                    out.value(in.getString());
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected " + token);
+            }
+            if (depth <= 0) {
+                return true;
+            }
+            keyNext = objs[depth - 1];
+            token = in.next();
+        }
+    }
+
+}
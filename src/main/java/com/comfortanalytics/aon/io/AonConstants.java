@@ -29,6 +29,11 @@ public interface AonConstants {
     char I32 = 'j';
     char I64 = 'J';
 
+    int KEY5 = 0x80;
+    char KEY8 = 'k';
+    char KEY16 = 'K';
+    char KEY_DEF = 'q';
+
     char LIST_START = '[';
     char LIST_END = ']';
 
@@ -36,6 +41,8 @@ public interface AonConstants {
     int MAX_I16 = Short.MAX_VALUE;
     int MAX_I32 = Integer.MAX_VALUE;
 
+    int MAX_KEYS = 0x10000;
+
     int MAX_U5 = 0x1F;
     int MAX_U8 = 0xFF;
     int MAX_U16 = 0xFFFF;
@@ -49,11 +56,15 @@ public interface AonConstants {
     char OBJ_END = '}';
     char OBJ_START = '{';
 
+    char PACKED = 'p';
+
     int S5 = 0xA0;
     char S8 = 's';
     char S16 = 'S';
     char S32 = 'r';
 
+    char SIZED = 'z';
+
     int U5 = 0xE0;
     char U8 = 'u';
     char U16 = 'U';
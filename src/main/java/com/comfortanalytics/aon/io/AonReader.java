@@ -1,42 +1,124 @@
 package com.comfortanalytics.aon.io;
 
 import com.comfortanalytics.aon.AbstractReader;
-import java.io.BufferedInputStream;
+import com.comfortanalytics.aon.Alist;
+import com.comfortanalytics.aon.MappedInput;
+import com.comfortanalytics.aon.SymbolTable;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 /**
  * Areader implementation that uses the Aon format.
+ * <p>
+ * Input is decoded directly from an internal byte array.  When constructed with a byte array,
+ * that array is decoded in place, otherwise the internal array is a window that is refilled from
+ * the stream as needed.
+ * <p>
+ * Readers of byte arrays support lazy decoding, nested groups are skipped without decoding their
+ * contents and are decoded from the array on first access.
+ * <p>
+ * Object keys written with a key table are resolved to the String instance decoded at their first
+ * occurrence.
+ * <p>
+ * Packed runs of primitives are returned by next() one element at a time, but getList decodes
+ * them in bulk into a typed list.
+ * <p>
+ * Lists and objects with a length prefix are skipped without scanning their contents.
  *
+ * @see AonWriter#setKeyTable(boolean)
  * @author Aaron Hansen
  */
 @SuppressWarnings({"ResultOfMethodCallIgnored", "unused"})
 public class AonReader extends AbstractReader implements AonConstants {
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int BUF_SIZE = 8192;
+
     ///////////////////////////////////////////////////////////////////////////
     // Instance Fields
     ///////////////////////////////////////////////////////////////////////////
 
-    private byte[] buffer;
+    private byte[] buf;
+    private int bufEnd;
+    private int bufOff;
+    private long bufPos;
+    private long groupEnd = -1;
     private final InputStream in;
+    private int keyBase;
+    private int keyCount;
+    private String[] keys;
+    private int packedBits;
+    private int packedCount;
+    private int packedIdx;
+    private int packedType;
+    private long tokenPos;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Decodes the entire array, which will not be copied.
+     */
+    public AonReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes a range of the array, which will not be copied.
+     *
+     * @param buf The encoded document.
+     * @param off The index of the first byte to decode.
+     * @param len The number of bytes to decode.
+     */
+    public AonReader(byte[] buf, int off, int len) {
+        if ((off < 0) || (len < 0) || ((off + len) > buf.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buf = buf;
+        this.bufOff = off;
+        this.bufEnd = off + len;
+        this.bufPos = -off;
+        this.in = null;
+    }
+
+    /**
+     * Decodes a nested group, which can reference the keys defined before it.
+     */
+    private AonReader(byte[] buf, int off, int len, String[] keys) {
+        this(buf, off, len);
+        if (keys != null) {
+            this.keys = keys;
+            this.keyBase = this.keyCount = keys.length;
+        }
+    }
+
     public AonReader(File file) {
-        this.in = new BufferedInputStream(fis(file));
+        this(fis(file));
     }
 
     public AonReader(InputStream in) {
+        this(in, BUF_SIZE);
+    }
+
+    /**
+     * @param in      The stream to decode.
+     * @param bufSize The initial size of the internal buffer.
+     */
+    public AonReader(InputStream in, int bufSize) {
         this.in = in;
+        this.buf = new byte[Math.max(bufSize, 16)];
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -45,6 +127,9 @@ public class AonReader extends AbstractReader implements AonConstants {
 
     @Override
     public void close() {
+        if (in == null) {
+            return;
+        }
         try {
             in.close();
         } catch (IOException x) {
@@ -52,76 +137,104 @@ public class AonReader extends AbstractReader implements AonConstants {
         }
     }
 
+    /**
+     * The position of the tag of the token last returned by next(), relative to the beginning of
+     * the input.
+     */
+    @Override
+    public long getOffset() {
+        return tokenPos;
+    }
+
     @Override
     public Token next() {
         try {
-            int ch = in.read() & 0xFF;
+            if (packedCount > 0) {
+                tokenPos = bufPos + bufOff;
+                return nextPacked();
+            }
+            if ((bufOff == bufEnd) && (fill(1) < 1)) {
+                return setEndInput();
+            }
+            tokenPos = bufPos + bufOff;
+            int ch = buf[bufOff++] & 0xFF;
             switch (ch) {
                 case NULL:
                     return setNextNull();
                 case DOUBLE:
-                    return setNext(Double.longBitsToDouble(readLong(in)));
+                    return setNext(Double.longBitsToDouble(readLong()));
                 case FLOAT:
-                    return setNext(Float.intBitsToFloat(readInt(in)));
+                    return setNext(Float.intBitsToFloat(readInt()));
                 case FALSE:
                     return setNext(false);
                 case TRUE:
                     return setNext(true);
                 case OBJ_START:
-                    return setBeginObj();
+                    return beginGroup(OBJ_START, -1);
                 case OBJ_END:
                     return setEndObj();
                 case LIST_START:
-                    return setBeginList();
+                    return beginGroup(LIST_START, -1);
                 case LIST_END:
                     return setEndList();
                 case BIGINT8:
-                    return setNext(readBigInteger(readU8(in)));
+                    return setNext(new BigInteger(readBytes(readU8())));
                 case BIGINT16:
-                    return setNext(readBigInteger(readU16(in)));
+                    return setNext(new BigInteger(readBytes(readU16())));
                 case BIGINT32:
-                    return setNext(readBigInteger(readInt(in)));
-                case BIN8: {
-                    byte[] b = new byte[readU8(in)];
-                    in.read(b);
-                    return setNext(b);
-                }
-                case BIN16: {
-                    byte[] b = new byte[readU16(in)];
-                    in.read(b);
-                    return setNext(b);
-                }
-                case BIN32: {
-                    byte[] b = new byte[readInt(in)];
-                    in.read(b);
-                    return setNext(b);
-                }
+                    return setNext(new BigInteger(readBytes(readInt())));
+                case BIN8:
+                    return setNext(readBytes(readU8()));
+                case BIN16:
+                    return setNext(readBytes(readU16()));
+                case BIN32:
+                    return setNext(readBytes(readInt()));
                 case DEC8:
-                    return setNext(readBigDecimal(readU8(in)));
+                    return setNext(new BigDecimal(readString(readU8())));
                 case DEC16:
-                    return setNext(readBigDecimal(readU16(in)));
+                    return setNext(new BigDecimal(readString(readU16())));
                 case DEC32:
-                    return setNext(readBigDecimal(readInt(in)));
+                    return setNext(new BigDecimal(readString(readInt())));
                 case I8:
-                    return setNext((byte) in.read());
+                    require(1);
+                    return setNext((int) buf[bufOff++]);
                 case I16:
-                    return setNext(readShort(in));
+                    return setNext((int) (short) readU16());
                 case I32:
-                    return setNext(readInt(in));
+                    return setNext(readInt());
                 case I64:
-                    return setNext(readLong(in));
+                    return setNext(readLong());
+                case KEY8:
+                    return setNext(getKey(readU8()));
+                case KEY16:
+                    return setNext(getKey(readU16()));
+                case KEY_DEF:
+                    return setNext(defineKey());
+                case PACKED:
+                    packedType = readU8();
+                    packedCount = readCount();
+                    packedIdx = 0;
+                    packedLength(packedType, 0);
+                    if (packedCount == 0) {
+                        return next();
+                    }
+                    return nextPacked();
                 case S8:
-                    return setNext(readString(readU8(in)));
+                    return setNext(readString(readU8()));
                 case S16:
-                    return setNext(readString(readU16(in)));
+                    return setNext(readString(readU16()));
                 case S32:
-                    return setNext(readString(readInt(in)));
+                    return setNext(readString(readInt()));
+                case SIZED:
+                    long len = readInt() & 0xFFFFFFFFL;
+                    long end = bufPos + bufOff + len;
+                    return beginGroup(readU8(), end);
                 case U8:
-                    return setNext(readU8(in));
+                    return setNext(readU8());
                 case U16:
-                    return setNext(readU16(in));
+                    return setNext(readU16());
                 case U32:
-                    return setNext(readU32(in));
+                    return setNext(readInt() & 0xFFFFFFFFL);
                 default:
                     if ((ch & MSB5) == S5) {
                         return setNext(readString(ch & LSB5));
@@ -132,6 +245,9 @@ public class AonReader extends AbstractReader implements AonConstants {
                     if ((ch & MSB5) == I5) {
                         return setNext((ch & LSB5) | MIN_I5);
                     }
+                    if ((ch & MSB5) == KEY5) {
+                        return setNext(getKey(ch & LSB5));
+                    }
                     throw new IllegalStateException("Unexpected symbol: 0x"
                                                             + Integer.toHexString(ch));
             }
@@ -140,78 +256,599 @@ public class AonReader extends AbstractReader implements AonConstants {
         }
     }
 
+    /**
+     * Walks the tags of the group, skipping payloads by their length prefixes.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipChildren() {
+        Token ret = last();
+        if ((ret != Token.BEGIN_LIST) && (ret != Token.BEGIN_OBJ)) {
+            return ret;
+        }
+        try {
+            if (groupEnd >= 0) {
+                skip(groupEnd - (bufPos + bufOff));
+                groupEnd = -1;
+            } else {
+                skipGroup();
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        if (ret == Token.BEGIN_OBJ) {
+            return setEndObj();
+        }
+        return setEndList();
+    }
+
+    /**
+     * Skips payloads by their length prefixes, strings and numbers are never decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipValue() {
+        return skipNext(true);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
-    // Package / Private Methods
+    // Protected Methods
     ///////////////////////////////////////////////////////////////////////////
 
-    private static InputStream fis(File file) {
+    /**
+     * Decodes an entire packed run into a primitive array.
+     */
+    @Override
+    protected boolean addPacked(Alist list) {
         try {
-            return new FileInputStream(file);
-        } catch (FileNotFoundException x) {
+            if ((packedCount > 0) || ((bufOff == bufEnd) && (fill(1) < 1))) {
+                return false;
+            }
+            if ((buf[bufOff] & 0xFF) != PACKED) {
+                return false;
+            }
+            bufOff++;
+            int type = readU8();
+            int count = readCount();
+            int i = 0;
+            int n;
+            switch (type) {
+                case I8:
+                    int[] i8 = new int[count];
+                    while (i < count) {
+                        n = available(count - i, 1);
+                        for (int end = i + n; i < end; i++) {
+                            i8[i] = buf[bufOff++];
+                        }
+                    }
+                    list.addAll(i8);
+                    break;
+                case I16:
+                    int[] i16 = new int[count];
+                    while (i < count) {
+                        n = available(count - i, 2);
+                        for (int end = i + n; i < end; i++) {
+                            i16[i] = (short) (((buf[bufOff] & 0xFF) << 8)
+                                    | (buf[bufOff + 1] & 0xFF));
+                            bufOff += 2;
+                        }
+                    }
+                    list.addAll(i16);
+                    break;
+                case I32:
+                    int[] i32 = new int[count];
+                    while (i < count) {
+                        n = available(count - i, 4);
+                        ByteBuffer.wrap(buf, bufOff, n * 4).asIntBuffer().get(i32, i, n);
+                        bufOff += n * 4;
+                        i += n;
+                    }
+                    list.addAll(i32);
+                    break;
+                case I64:
+                    long[] i64 = new long[count];
+                    while (i < count) {
+                        n = available(count - i, 8);
+                        ByteBuffer.wrap(buf, bufOff, n * 8).asLongBuffer().get(i64, i, n);
+                        bufOff += n * 8;
+                        i += n;
+                    }
+                    list.addAll(i64);
+                    break;
+                case FLOAT:
+                    float[] f32 = new float[count];
+                    while (i < count) {
+                        n = available(count - i, 4);
+                        ByteBuffer.wrap(buf, bufOff, n * 4).asFloatBuffer().get(f32, i, n);
+                        bufOff += n * 4;
+                        i += n;
+                    }
+                    list.addAll(f32);
+                    break;
+                case DOUBLE:
+                    double[] f64 = new double[count];
+                    while (i < count) {
+                        n = available(count - i, 8);
+                        ByteBuffer.wrap(buf, bufOff, n * 8).asDoubleBuffer().get(f64, i, n);
+                        bufOff += n * 8;
+                        i += n;
+                    }
+                    list.addAll(f64);
+                    break;
+                case TRUE:
+                    boolean[] bits = new boolean[count];
+                    while (i < count) {
+                        n = available((count - i + 7) / 8, 1);
+                        for (int j = 0; j < n; j++) {
+                            int b = buf[bufOff++];
+                            for (int mask = 0x80; (mask != 0) && (i < count); mask >>>= 1) {
+                                bits[i++] = (b & mask) != 0;
+                            }
+                        }
+                    }
+                    list.addAll(bits);
+                    break;
+                default:
+                    packedLength(type, count);
+            }
+            return true;
+        } catch (IOException x) {
             throw new RuntimeException(x);
         }
     }
 
-    private byte[] getBuffer(int len) {
-        if ((buffer == null) || (buffer.length < len)) {
-            buffer = new byte[len + 1000];
+    @Override
+    protected Supplier<AbstractReader> lazyReader() {
+        if (in != null) {
+            return null;
+        }
+        byte[] buf = this.buf;
+        int start = bufOff - 1;
+        String[] keys = null;
+        if (keyCount > 0) {
+            keys = Arrays.copyOf(this.keys, keyCount);
         }
-        return buffer;
+        skipChildren();
+        int len = bufOff - start;
+        String[] prefix = keys;
+        return () -> new AonReader(buf, start, len, prefix);
     }
 
-    private BigDecimal readBigDecimal(int len) throws IOException {
-        return new BigDecimal(readString(len));
+    @Override
+    protected Token skipScalar() {
+        return skipNext(false);
     }
 
-    private BigInteger readBigInteger(int len) throws IOException {
-        byte[] buf = new byte[len];
-        in.read(buf);
-        return new BigInteger(buf);
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Makes as many of the remaining elements of a packed run available in the buffer as will
+     * fit.
+     *
+     * @param count The number of elements remaining.
+     * @param width The number of bytes per element.
+     * @return The number of whole elements available, at least one.
+     * @throws EOFException If the input ends first.
+     */
+    private int available(int count, int width) throws IOException {
+        long len = (long) count * width;
+        int avail = bufEnd - bufOff;
+        if (avail < len) {
+            avail = fill((int) Math.min(len, buf.length));
+        }
+        int ret = Math.min(count, avail / width);
+        if (ret == 0) {
+            throw new EOFException();
+        }
+        return ret;
     }
 
-    private static int readInt(InputStream in) throws IOException {
-        return (((in.read() & 0xFF) << 24) |
-                ((in.read() & 0xFF) << 16) |
-                ((in.read() & 0xFF) << 8) |
-                ((in.read() & 0xFF)));
+    /**
+     * Returns the token for the tag of a list or object.
+     *
+     * @param end The input position after the group if it was length prefixed, otherwise -1.
+     */
+    private Token beginGroup(int ch, long end) {
+        if (getDepth() == 0) {
+            keyCount = keyBase;
+        }
+        groupEnd = end;
+        if (ch == OBJ_START) {
+            return setBeginObj();
+        }
+        if (ch == LIST_START) {
+            return setBeginList();
+        }
+        throw new IllegalStateException("Expecting a list or object: 0x"
+                                                + Integer.toHexString(ch));
     }
 
-    private static long readLong(InputStream in) throws IOException {
-        return (((long) (in.read() & 0xFF) << 56) |
-                ((long) (in.read() & 0xFF) << 48) |
-                ((long) (in.read() & 0xFF) << 40) |
-                ((long) (in.read() & 0xFF) << 32) |
-                ((long) (in.read() & 0xFF) << 24) |
-                ((in.read() & 0xFF) << 16) |
-                ((in.read() & 0xFF) << 8) |
-                ((in.read() & 0xFF)));
+    /**
+     * Reads the string following a KEY_DEF tag and adds it to the key table.
+     */
+    private String defineKey() throws IOException {
+        int ch = readU8();
+        String ret;
+        switch (ch) {
+            case S8:
+                ret = readString(readU8());
+                break;
+            case S16:
+                ret = readString(readU16());
+                break;
+            case S32:
+                ret = readString(readInt());
+                break;
+            default:
+                if ((ch & MSB5) != S5) {
+                    throw new IllegalStateException("Expecting a key string: 0x"
+                                                            + Integer.toHexString(ch));
+                }
+                ret = readString(ch & LSB5);
+        }
+        if (keys == null) {
+            keys = new String[16];
+        } else if (keyCount == keys.length) {
+            keys = Arrays.copyOf(keys, keyCount * 2);
+        }
+        keys[keyCount++] = ret;
+        return ret;
+    }
+
+    private static InputStream fis(File file) {
+        return MappedInput.open(file);
     }
 
-    private static short readShort(InputStream in) throws IOException {
-        return (short) (((in.read() & 0xFF) << 8) | in.read());
+    /**
+     * Attempts to make at least len bytes available in the buffer, moving unread bytes to the
+     * front of the buffer and growing it if necessary.
+     *
+     * @return The number of bytes available, which will only be less than len at the end of
+     * input.
+     */
+    private int fill(int len) throws IOException {
+        int avail = bufEnd - bufOff;
+        if ((in == null) || (avail >= len)) {
+            return avail;
+        }
+        if (len > buf.length) {
+            byte[] tmp = new byte[Math.max(len, buf.length * 2)];
+            System.arraycopy(buf, bufOff, tmp, 0, avail);
+            buf = tmp;
+        } else if (bufOff > 0) {
+            System.arraycopy(buf, bufOff, buf, 0, avail);
+        }
+        bufPos += bufOff;
+        bufOff = 0;
+        bufEnd = avail;
+        while (bufEnd < len) {
+            int count = in.read(buf, bufEnd, buf.length - bufEnd);
+            if (count < 0) {
+                break;
+            }
+            bufEnd += count;
+        }
+        return bufEnd;
+    }
+
+    private String getKey(int idx) {
+        if (idx >= keyCount) {
+            throw new IllegalStateException("Undefined key reference: " + idx);
+        }
+        return keys[idx];
+    }
+
+    /**
+     * Returns the next element of the current packed run.
+     */
+    private Token nextPacked() throws IOException {
+        packedCount--;
+        switch (packedType) {
+            case I8:
+                require(1);
+                return setNext((int) buf[bufOff++]);
+            case I16:
+                return setNext((int) (short) readU16());
+            case I32:
+                return setNext(readInt());
+            case I64:
+                return setNext(readLong());
+            case FLOAT:
+                return setNext(Float.intBitsToFloat(readInt()));
+            case DOUBLE:
+                return setNext(Double.longBitsToDouble(readLong()));
+            default:
+                int bit = packedIdx++ & 7;
+                if (bit == 0) {
+                    packedBits = readU8();
+                }
+                return setNext((packedBits & (0x80 >>> bit)) != 0);
+        }
+    }
+
+    /**
+     * The number of bytes in a packed run.
+     *
+     * @throws IllegalStateException If the element type is not valid.
+     */
+    private static long packedLength(int type, int count) {
+        switch (type) {
+            case I8:
+                return count;
+            case I16:
+                return 2L * count;
+            case FLOAT:
+            case I32:
+                return 4L * count;
+            case DOUBLE:
+            case I64:
+                return 8L * count;
+            case TRUE:
+                return (count + 7L) / 8;
+        }
+        throw new IllegalStateException("Unexpected packed type: 0x" + Integer.toHexString(type));
+    }
+
+    /**
+     * Returns a new array containing the next len bytes.
+     */
+    private byte[] readBytes(int len) throws IOException {
+        byte[] ret = new byte[len];
+        int avail = Math.min(len, bufEnd - bufOff);
+        System.arraycopy(buf, bufOff, ret, 0, avail);
+        bufOff += avail;
+        if (avail < len) {
+            if (in == null) {
+                throw new EOFException();
+            }
+            //bypass the buffer for the remainder of large payloads
+            while (avail < len) {
+                int count = in.read(ret, avail, len - avail);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                avail += count;
+                bufPos += count;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the count of a packed run.
+     */
+    private int readCount() throws IOException {
+        int ret = readInt();
+        if (ret < 0) {
+            throw new IllegalStateException("Invalid packed count: " + ret);
+        }
+        return ret;
+    }
+
+    private int readInt() throws IOException {
+        require(4);
+        byte[] b = buf;
+        int i = bufOff;
+        bufOff = i + 4;
+        return ((b[i] & 0xFF) << 24) |
+                ((b[i + 1] & 0xFF) << 16) |
+                ((b[i + 2] & 0xFF) << 8) |
+                (b[i + 3] & 0xFF);
+    }
+
+    private long readLong() throws IOException {
+        require(8);
+        byte[] b = buf;
+        int i = bufOff;
+        bufOff = i + 8;
+        return ((long) (b[i] & 0xFF) << 56) |
+                ((long) (b[i + 1] & 0xFF) << 48) |
+                ((long) (b[i + 2] & 0xFF) << 40) |
+                ((long) (b[i + 3] & 0xFF) << 32) |
+                ((long) (b[i + 4] & 0xFF) << 24) |
+                ((b[i + 5] & 0xFF) << 16) |
+                ((b[i + 6] & 0xFF) << 8) |
+                (b[i + 7] & 0xFF);
     }
 
     private String readString(int len) throws IOException {
-        byte[] buf = getBuffer(len);
-        if (in.read(buf, 0, len) != len) {
+        if (len == 0) {
+            return "";
+        }
+        if (len > (bufEnd - bufOff)) {
+            if ((in != null) && (len > buf.length)) {
+                return new String(readBytes(len), StandardCharsets.UTF_8);
+            }
+            require(len);
+        }
+        SymbolTable symbols = nextSymbols();
+        String ret;
+        if (symbols != null) {
+            ret = symbols.get(buf, bufOff, len);
+        } else {
+            ret = new String(buf, bufOff, len, StandardCharsets.UTF_8);
+        }
+        bufOff += len;
+        return ret;
+    }
+
+    private int readU16() throws IOException {
+        require(2);
+        int i = bufOff;
+        bufOff = i + 2;
+        return ((buf[i] & 0xFF) << 8) | (buf[i + 1] & 0xFF);
+    }
+
+    private int readU8() throws IOException {
+        require(1);
+        return buf[bufOff++] & 0xFF;
+    }
+
+    /**
+     * Advances past the next len bytes.
+     */
+    private void skip(long len) throws IOException {
+        int avail = bufEnd - bufOff;
+        if (len <= avail) {
+            bufOff += (int) len;
+            return;
+        }
+        bufOff = bufEnd;
+        len -= avail;
+        if (in == null) {
             throw new EOFException();
         }
-        return new String(buf, 0, len, StandardCharsets.UTF_8);
+        while (len > 0) {
+            long count = in.skip(len);
+            if (count <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                count = 1;
+            }
+            len -= count;
+            bufPos += count;
+        }
     }
 
-    private static int readU16(InputStream in) throws IOException {
-        return ((in.read() & 0xFF) << 8) | (in.read() & 0xFF);
+    /**
+     * Advances past the end of the current list or object.
+     */
+    private void skipGroup() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            require(1);
+            int ch = buf[bufOff++] & 0xFF;
+            switch (ch) {
+                case OBJ_START:
+                case LIST_START:
+                    depth++;
+                    break;
+                case OBJ_END:
+                case LIST_END:
+                    depth--;
+                    break;
+                default:
+                    skipPayload(ch);
+            }
+        }
     }
 
-    private static long readU32(InputStream in) throws IOException {
-        return ((long) (in.read() & 0xFF) << 24) |
-                ((in.read() & 0xFF) << 16) |
-                ((in.read() & 0xFF) << 8) |
-                ((in.read() & 0xFF));
+    /**
+     * Implements skipValue and skipScalar, scalars are skipped using their length prefixes.
+     *
+     * @param children Whether to skip the contents of a list or object, or leave it begun.
+     */
+    private Token skipNext(boolean children) {
+        try {
+            if ((packedCount > 0) || ((bufOff == bufEnd) && (fill(1) < 1))) {
+                return next();
+            }
+            int ch = buf[bufOff] & 0xFF;
+            switch (ch) {
+                case OBJ_START:
+                case LIST_START:
+                case SIZED:
+                    Token ret = next();
+                    if (children) {
+                        skipChildren();
+                    }
+                    return ret;
+                case OBJ_END:
+                case LIST_END:
+                case PACKED:
+                    return next();
+            }
+            tokenPos = bufPos + bufOff;
+            bufOff++;
+            skipPayload(ch);
+            return setNextNull();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
     }
 
-    private static int readU8(InputStream in) throws IOException {
-        return in.read() & 0xFF;
+    /**
+     * Advances past the payload of a scalar whose tag has been read, using the length prefixes
+     * rather than decoding it.
+     */
+    private void skipPayload(int ch) throws IOException {
+        switch (ch) {
+            case NULL:
+            case FALSE:
+            case TRUE:
+                break;
+            case I8:
+            case KEY8:
+            case U8:
+                skip(1);
+                break;
+            case I16:
+            case KEY16:
+            case U16:
+                skip(2);
+                break;
+            case FLOAT:
+            case I32:
+            case U32:
+                skip(4);
+                break;
+            case DOUBLE:
+            case I64:
+                skip(8);
+                break;
+            case KEY_DEF:
+                defineKey();
+                break;
+            case PACKED:
+                int type = readU8();
+                skip(packedLength(type, readCount()));
+                break;
+            case BIGINT8:
+            case BIN8:
+            case DEC8:
+            case S8:
+                skip(readU8());
+                break;
+            case BIGINT16:
+            case BIN16:
+            case DEC16:
+            case S16:
+                skip(readU16());
+                break;
+            case BIGINT32:
+            case BIN32:
+            case DEC32:
+            case S32:
+            case SIZED:
+                skip(readInt() & 0xFFFFFFFFL);
+                break;
+            default:
+                if ((ch & MSB5) == S5) {
+                    skip(ch & LSB5);
+                } else if (((ch & MSB5) != U5) && ((ch & MSB5) != I5)
+                        && ((ch & MSB5) != KEY5)) {
+                    throw new IllegalStateException("Unexpected symbol: 0x"
+                                                            + Integer.toHexString(ch));
+                }
+        }
+    }
+
+    /**
+     * Ensures len bytes are available in the buffer.
+     *
+     * @throws EOFException If the input ends first.
+     */
+    private void require(int len) throws IOException {
+        if ((bufEnd - bufOff) < len) {
+            if (fill(len) < len) {
+                throw new EOFException();
+            }
+        }
     }
 
 }
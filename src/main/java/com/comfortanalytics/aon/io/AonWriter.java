@@ -1,38 +1,118 @@
 package com.comfortanalytics.aon.io;
 
 import com.comfortanalytics.aon.AbstractWriter;
-import java.io.BufferedOutputStream;
+import com.comfortanalytics.aon.Adata;
+import com.comfortanalytics.aon.Alist;
+import com.comfortanalytics.aon.Atype;
+import com.comfortanalytics.aon.ByteBufferOutput;
+import com.comfortanalytics.aon.ChannelOutput;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.UnaryOperator;
 
 /**
  * Awriter implementation that uses the Aon format.
+ * <p>
+ * Values are encoded into an internal byte array which is sent to the stream in bulk whenever it
+ * fills, when the outermost object or list is closed, and on flush or close.  When constructed
+ * without a stream, the array simply grows and the encoding can be retrieved with toByteArray().
+ * <p>
+ * With the key table enabled, the first occurrence of each object key in a document is registered
+ * and later occurrences are written as an index into the table.
+ * <p>
+ * Lists of at least MIN_PACKED booleans or numbers of a single type are written as one packed
+ * run, rather than a tag per element.
+ * <p>
+ * With group lengths enabled, lists and objects are prefixed with their length in bytes so
+ * readers can skip them without scanning their contents.  The lengths are patched in once each
+ * group ends, so the outermost group is held in memory until then.
  *
  * @author Aaron Hansen
  */
 public class AonWriter extends AbstractWriter implements AonConstants {
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Shorter lists are not packed.
+     */
+    public static final int MIN_PACKED = 8;
+
+    /**
+     * Lists and objects encoded in fewer bytes are not length prefixed.
+     */
+    public static final int MIN_SIZED = 64;
+
+    private static final int BUF_SIZE = 8192;
+
     ///////////////////////////////////////////////////////////////////////////
     // Instance Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private byte[] buf;
+    private int bufLen;
+    private HashMap<String, Integer> keyTable;
     private final OutputStream out;
+    private boolean sized;
+    private int sizedDepth;
+    private int[] sizedKeys;
+    private int[] sizedStarts;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Encodes to an internal array, use toByteArray() to retrieve the result.
+     */
+    public AonWriter() {
+        this(null, BUF_SIZE);
+    }
+
+    /**
+     * Encodes into the caller's buffers.
+     *
+     * @see ByteBufferOutput
+     */
+    public AonWriter(ByteBuffer buf, UnaryOperator<ByteBuffer> onFull) {
+        this(new ByteBufferOutput(buf, onFull), BUF_SIZE);
+    }
+
     public AonWriter(File file) {
-        this.out = new BufferedOutputStream(fos(file));
+        this(fos(file), BUF_SIZE);
     }
 
     public AonWriter(OutputStream out) {
+        this(out, BUF_SIZE);
+    }
+
+    /**
+     * Writes straight to the channel.  Large payloads are sent together with the buffer in one
+     * gathering write, if the channel supports it.
+     */
+    public AonWriter(WritableByteChannel out) {
+        this(new ChannelOutput(out), BUF_SIZE);
+    }
+
+    /**
+     * @param out     Where to send the encoding, can be null to only encode to the internal
+     *                array.
+     * @param bufSize Encoded bytes are sent to the stream once this many accumulate. Binary and
+     *                string payloads larger than this bypass the buffer.
+     */
+    public AonWriter(OutputStream out, int bufSize) {
         this.out = out;
+        this.buf = new byte[Math.max(bufSize, 16)];
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -42,7 +122,10 @@ public class AonWriter extends AbstractWriter implements AonConstants {
     @Override
     public void close() {
         try {
-            out.close();
+            drain();
+            if (out != null) {
+                out.close();
+            }
         } catch (Exception x) {
             throw new RuntimeException(x);
         }
@@ -51,20 +134,78 @@ public class AonWriter extends AbstractWriter implements AonConstants {
     @Override
     public void flush() {
         try {
-            out.flush();
+            drain();
+            if (out != null) {
+                out.flush();
+            }
         } catch (Exception x) {
             throw new RuntimeException(x);
         }
     }
 
+    @Override
+    public AonWriter reset() {
+        bufLen = 0;
+        sizedDepth = 0;
+        if (keyTable != null) {
+            keyTable.clear();
+        }
+        return (AonWriter) super.reset();
+    }
+
+    /**
+     * When true, lists and objects are prefixed with their encoded length so readers can skip
+     * them in constant time.  Small groups, and groups that add to the key table, are not
+     * prefixed.  AonReader understands both encodings, but older readers do not.  This must not
+     * be changed while a group is open.  False by default.
+     */
+    public AonWriter setGroupLengths(boolean arg) {
+        if (getDepth() > 0) {
+            throw new IllegalStateException("Group open");
+        }
+        sized = arg;
+        if (arg && (sizedStarts == null)) {
+            sizedStarts = new int[16];
+            sizedKeys = new int[16];
+        }
+        return this;
+    }
+
+    /**
+     * When true, repeated object keys are written as references to their first occurrence, which
+     * is much smaller for lists of similar objects.  The table is scoped to each outermost list or
+     * object, so records can still be decoded independently.  AonReader always understands
+     * references, but older readers do not.  False by default.
+     */
+    public AonWriter setKeyTable(boolean arg) {
+        if (!arg) {
+            keyTable = null;
+        } else if (keyTable == null) {
+            keyTable = new HashMap<>();
+        }
+        return this;
+    }
+
+    /**
+     * Returns a copy of everything encoded since construction or the last reset.
+     *
+     * @throws IllegalStateException If constructed with a stream.
+     */
+    public byte[] toByteArray() {
+        if (out != null) {
+            throw new IllegalStateException("Encoding to a stream");
+        }
+        return Arrays.copyOf(buf, bufLen);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Protected Methods
     ///////////////////////////////////////////////////////////////////////////
 
     @Override
     protected void write(BigDecimal arg) throws IOException {
-        byte[] b = arg.toString().getBytes(StandardCharsets.UTF_8);
-        int len = b.length;
+        String str = arg.toString();
+        int len = str.length(); //always ascii
         if (len <= MAX_U8) {
             write1Byte(DEC8, len);
         } else if (len <= MAX_U16) {
@@ -72,7 +213,7 @@ public class AonWriter extends AbstractWriter implements AonConstants {
         } else {
             write4Bytes(DEC32, len);
         }
-        out.write(b);
+        writeUtf8(str, len);
     }
 
     @Override
@@ -86,16 +227,12 @@ public class AonWriter extends AbstractWriter implements AonConstants {
         } else {
             write4Bytes(BIGINT32, len);
         }
-        out.write(b);
+        writeBytes(b);
     }
 
     @Override
     protected void write(boolean arg) throws IOException {
-        if (arg) {
-            out.write(TRUE);
-        } else {
-            out.write(FALSE);
-        }
+        write1Byte(arg ? TRUE : FALSE);
     }
 
     @Override
@@ -108,7 +245,7 @@ public class AonWriter extends AbstractWriter implements AonConstants {
         } else {
             write4Bytes(BIN32, len);
         }
-        out.write(arg);
+        writeBytes(arg);
     }
 
     @Override
@@ -125,7 +262,7 @@ public class AonWriter extends AbstractWriter implements AonConstants {
     protected void write(int arg) throws IOException {
         if (arg < 0) {
             if (arg >= MIN_I5) {
-                out.write(I5 | (arg & LSB5));
+                write1Byte(I5 | (arg & LSB5));
             } else if (arg >= MIN_I8) {
                 write1Byte(I8, arg);
             } else if (arg >= MIN_I16) {
@@ -135,7 +272,7 @@ public class AonWriter extends AbstractWriter implements AonConstants {
             }
         } else {
             if (arg <= MAX_U5) {
-                out.write(U5 | arg);
+                write1Byte(U5 | arg);
             } else if (arg <= MAX_I8) {
                 write1Byte(I8, arg);
             } else if (arg <= MAX_U8) {
@@ -163,10 +300,9 @@ public class AonWriter extends AbstractWriter implements AonConstants {
 
     @Override
     protected void write(CharSequence arg) throws IOException {
-        byte[] b = arg.toString().getBytes(StandardCharsets.UTF_8);
-        int len = b.length;
+        int len = utf8Length(arg);
         if (len <= MAX_U5) {
-            out.write(S5 | len);
+            write1Byte(S5 | len);
         } else if (len <= MAX_U8) {
             write1Byte(S8, len);
         } else if (len <= MAX_U16) {
@@ -174,32 +310,74 @@ public class AonWriter extends AbstractWriter implements AonConstants {
         } else {
             write4Bytes(S32, len);
         }
-        out.write(b);
+        writeUtf8(arg, len);
     }
 
     @Override
     protected void writeBeginList() throws IOException {
-        out.write(LIST_START);
+        if ((keyTable != null) && (getDepth() == 0)) {
+            keyTable.clear();
+        }
+        if (sized) {
+            beginSized();
+        }
+        write1Byte(LIST_START);
     }
 
     @Override
     protected void writeBeginObj() throws IOException {
-        out.write(OBJ_START);
+        if ((keyTable != null) && (getDepth() == 0)) {
+            keyTable.clear();
+        }
+        if (sized) {
+            beginSized();
+        }
+        write1Byte(OBJ_START);
     }
 
     @Override
     protected void writeEndList() throws IOException {
-        out.write(LIST_END);
+        write1Byte(LIST_END);
+        if (sized) {
+            endSized();
+        }
+        if (getDepth() == 0) {
+            drain();
+        }
     }
 
     @Override
     protected void writeEndObj() throws IOException {
-        out.write(OBJ_END);
+        write1Byte(OBJ_END);
+        if (sized) {
+            endSized();
+        }
+        if (getDepth() == 0) {
+            drain();
+        }
     }
 
     @Override
     protected void writeKey(CharSequence arg) throws IOException {
-        write(arg);
+        if (keyTable == null) {
+            write(arg);
+            return;
+        }
+        String key = arg.toString();
+        Integer idx = keyTable.get(key);
+        if (idx == null) {
+            if (keyTable.size() < MAX_KEYS) {
+                keyTable.put(key, keyTable.size());
+                write1Byte(KEY_DEF);
+            }
+            write(key);
+        } else if (idx <= MAX_U5) {
+            write1Byte(KEY5 | idx);
+        } else if (idx <= MAX_U8) {
+            write1Byte(KEY8, idx);
+        } else {
+            write2Bytes(KEY16, idx);
+        }
     }
 
     @Override
@@ -208,7 +386,85 @@ public class AonWriter extends AbstractWriter implements AonConstants {
 
     @Override
     protected void writeNull() throws IOException {
-        out.write(NULL);
+        write1Byte(NULL);
+    }
+
+    @Override
+    protected boolean writePacked(Alist list) throws IOException {
+        int len = list.size();
+        if (len < MIN_PACKED) {
+            return false;
+        }
+        Atype type = list.typedAs();
+        if (type == null) {
+            type = packedType(list);
+            if (type == null) {
+                return false;
+            }
+        }
+        switch (type) {
+            case BOOLEAN:
+                writePackedHeader(TRUE, len);
+                for (int i = 0; i < len; i += 8) {
+                    int bits = 0;
+                    for (int j = 0; j < 8; j++) {
+                        bits <<= 1;
+                        if (((i + j) < len) && list.getBoolean(i + j)) {
+                            bits |= 1;
+                        }
+                    }
+                    write1Byte(bits);
+                }
+                break;
+            case DOUBLE:
+                writePackedHeader(DOUBLE, len);
+                for (int i = 0; i < len; i++) {
+                    writeI64(Double.doubleToLongBits(list.getDouble(i)));
+                }
+                break;
+            case FLOAT:
+                writePackedHeader(FLOAT, len);
+                for (int i = 0; i < len; i++) {
+                    writeI32(Float.floatToIntBits(list.getFloat(i)));
+                }
+                break;
+            case INT:
+            case LONG:
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                for (int i = 0; i < len; i++) {
+                    long val = list.getLong(i);
+                    min = Math.min(min, val);
+                    max = Math.max(max, val);
+                }
+                if ((min >= MIN_I8) && (max <= MAX_I8)) {
+                    writePackedHeader(I8, len);
+                    for (int i = 0; i < len; i++) {
+                        write1Byte(list.getInt(i));
+                    }
+                } else if ((min >= MIN_I16) && (max <= MAX_I16)) {
+                    writePackedHeader(I16, len);
+                    for (int i = 0; i < len; i++) {
+                        writeI16(list.getInt(i));
+                    }
+                } else if ((min >= MIN_I32) && (max <= MAX_I32)) {
+                    writePackedHeader(I32, len);
+                    for (int i = 0; i < len; i++) {
+                        writeI32(list.getInt(i));
+                    }
+                } else if (type == Atype.INT) {
+                    return false; //the longs would not be decoded as ints
+                } else {
+                    writePackedHeader(I64, len);
+                    for (int i = 0; i < len; i++) {
+                        writeI64(list.getLong(i));
+                    }
+                }
+                break;
+            default:
+                return false;
+        }
+        return true;
     }
 
     @Override
@@ -219,6 +475,65 @@ public class AonWriter extends AbstractWriter implements AonConstants {
     // Package / Private Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Reserves room for the length prefix of a group that is about to begin.
+     */
+    private void beginSized() throws IOException {
+        ensure(5);
+        if (sizedDepth == sizedStarts.length) {
+            sizedStarts = Arrays.copyOf(sizedStarts, sizedDepth * 2);
+            sizedKeys = Arrays.copyOf(sizedKeys, sizedDepth * 2);
+        }
+        sizedStarts[sizedDepth] = bufLen;
+        sizedKeys[sizedDepth++] = (keyTable == null) ? 0 : keyTable.size();
+        bufLen += 5;
+    }
+
+    /**
+     * Sends any buffered bytes to the stream, unless a length prefixed group is open.
+     */
+    private void drain() throws IOException {
+        if ((out != null) && (bufLen > 0) && (sizedDepth == 0)) {
+            out.write(buf, 0, bufLen);
+            bufLen = 0;
+        }
+    }
+
+    /**
+     * Patches the length into the prefix of the group that just ended, or removes the prefix if
+     * the group is small or defined keys that later groups may reference.
+     */
+    private void endSized() {
+        int start = sizedStarts[--sizedDepth];
+        int len = bufLen - start - 5;
+        boolean defs = (keyTable != null) && (keyTable.size() != sizedKeys[sizedDepth]);
+        if ((len < MIN_SIZED) || defs) {
+            System.arraycopy(buf, start + 5, buf, start, len);
+            bufLen -= 5;
+            return;
+        }
+        byte[] buf = this.buf;
+        buf[start] = SIZED;
+        buf[start + 1] = (byte) (len >>> 24);
+        buf[start + 2] = (byte) (len >>> 16);
+        buf[start + 3] = (byte) (len >>> 8);
+        buf[start + 4] = (byte) len;
+    }
+
+    /**
+     * Ensures there is room for len more bytes in the buffer, draining or growing it as
+     * necessary.
+     */
+    private void ensure(int len) throws IOException {
+        if ((bufLen + len) <= buf.length) {
+            return;
+        }
+        drain();
+        if ((bufLen + len) > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(bufLen + len, buf.length * 2));
+        }
+    }
+
     private static FileOutputStream fos(File file) {
         try {
             return new FileOutputStream(file);
@@ -227,44 +542,226 @@ public class AonWriter extends AbstractWriter implements AonConstants {
         }
     }
 
+    /**
+     * The type shared by every element of an untyped list, or null if they differ or are not
+     * booleans or numbers.  Ints and longs are considered the same type, which is LONG only if
+     * every element is a long.
+     */
+    private static Atype packedType(Alist list) {
+        Atype ret = null;
+        for (Adata val : list) {
+            Atype type = val.aonType();
+            switch (type) {
+                case INT:
+                case LONG:
+                    if ((ret == Atype.INT) || (ret == Atype.LONG)) {
+                        if (type != ret) {
+                            ret = Atype.INT;
+                        }
+                        continue;
+                    }
+                    break;
+                case BOOLEAN:
+                case DOUBLE:
+                case FLOAT:
+                    break;
+                default:
+                    return null;
+            }
+            if ((ret != null) && (ret != type)) {
+                return null;
+            }
+            ret = type;
+        }
+        return ret;
+    }
+
+    /**
+     * The number of bytes needed to UTF-8 encode the chars.  Unpaired surrogates count as one byte
+     * since they are encoded as '?'.
+     */
+    private static int utf8Length(CharSequence arg) {
+        int len = arg.length();
+        int ret = len;
+        char ch;
+        for (int i = 0; i < len; i++) {
+            ch = arg.charAt(i);
+            if (ch >= 0x80) {
+                if (ch < 0x800) {
+                    ret++;
+                } else if (Character.isSurrogate(ch)) {
+                    if (Character.isHighSurrogate(ch) && ((i + 1) < len)
+                            && Character.isLowSurrogate(arg.charAt(i + 1))) {
+                        ret += 2; //4 bytes for 2 chars
+                        i++;
+                    }
+                } else {
+                    ret += 2;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void write1Byte(int b) throws IOException {
+        if (bufLen == buf.length) {
+            ensure(1);
+        }
+        buf[bufLen++] = (byte) b;
+    }
+
     private void write1Byte(int b, int v) throws IOException {
-        out.write(b & 0xff);
-        out.write(v & 0xff);
+        ensure(2);
+        byte[] buf = this.buf;
+        int i = bufLen;
+        buf[i] = (byte) b;
+        buf[i + 1] = (byte) v;
+        bufLen = i + 2;
     }
 
     private void write2Bytes(int b, int v) throws IOException {
-        out.write(b & 0xff);
-        out.write((v >>> 8) & 0xFF);
-        out.write((v) & 0xFF);
+        ensure(3);
+        byte[] buf = this.buf;
+        int i = bufLen;
+        buf[i] = (byte) b;
+        buf[i + 1] = (byte) (v >>> 8);
+        buf[i + 2] = (byte) v;
+        bufLen = i + 3;
     }
 
     private void write4Bytes(int b, int v) throws IOException {
-        out.write(b & 0xff);
-        out.write((v >>> 24) & 0xFF);
-        out.write((v >>> 16) & 0xFF);
-        out.write((v >>> 8) & 0xFF);
-        out.write((v) & 0xFF);
+        ensure(5);
+        byte[] buf = this.buf;
+        int i = bufLen;
+        buf[i] = (byte) b;
+        buf[i + 1] = (byte) (v >>> 24);
+        buf[i + 2] = (byte) (v >>> 16);
+        buf[i + 3] = (byte) (v >>> 8);
+        buf[i + 4] = (byte) v;
+        bufLen = i + 5;
     }
 
     @SuppressWarnings("SameParameterValue")
     private void write4Bytes(int b, long v) throws IOException {
-        out.write(b & 0xff);
-        out.write((byte) (v >>> 24));
-        out.write((byte) (v >>> 16));
-        out.write((byte) (v >>> 8));
-        out.write((byte) (v));
+        write4Bytes(b, (int) v);
     }
 
     private void write8Bytes(int b, long v) throws IOException {
-        out.write(b & 0xff);
-        out.write((byte) (v >>> 56));
-        out.write((byte) (v >>> 48));
-        out.write((byte) (v >>> 40));
-        out.write((byte) (v >>> 32));
-        out.write((byte) (v >>> 24));
-        out.write((byte) (v >>> 16));
-        out.write((byte) (v >>> 8));
-        out.write((byte) (v));
+        ensure(9);
+        byte[] buf = this.buf;
+        int i = bufLen;
+        buf[i] = (byte) b;
+        buf[i + 1] = (byte) (v >>> 56);
+        buf[i + 2] = (byte) (v >>> 48);
+        buf[i + 3] = (byte) (v >>> 40);
+        buf[i + 4] = (byte) (v >>> 32);
+        buf[i + 5] = (byte) (v >>> 24);
+        buf[i + 6] = (byte) (v >>> 16);
+        buf[i + 7] = (byte) (v >>> 8);
+        buf[i + 8] = (byte) v;
+        bufLen = i + 9;
+    }
+
+    private void writeI16(int v) throws IOException {
+        ensure(2);
+        buf[bufLen++] = (byte) (v >>> 8);
+        buf[bufLen++] = (byte) v;
+    }
+
+    private void writeI32(int v) throws IOException {
+        ensure(4);
+        byte[] buf = this.buf;
+        int i = bufLen;
+        buf[i] = (byte) (v >>> 24);
+        buf[i + 1] = (byte) (v >>> 16);
+        buf[i + 2] = (byte) (v >>> 8);
+        buf[i + 3] = (byte) v;
+        bufLen = i + 4;
+    }
+
+    private void writeI64(long v) throws IOException {
+        writeI32((int) (v >>> 32));
+        writeI32((int) v);
+    }
+
+    /**
+     * The tag, element type and count that begin a packed run.
+     */
+    private void writePackedHeader(int type, int count) throws IOException {
+        write1Byte(PACKED, type);
+        writeI32(count);
+    }
+
+    /**
+     * UTF-8 encodes the chars directly into the buffer.
+     *
+     * @param arg The chars to encode.
+     * @param len The result of utf8Length(arg).
+     */
+    private void writeUtf8(CharSequence arg, int len) throws IOException {
+        int chars = arg.length();
+        int i = 0;
+        char ch;
+        if (len <= buf.length) { //ascii fast path
+            ensure(len);
+            byte[] buf = this.buf;
+            int off = bufLen;
+            for (; i < chars; i++) {
+                ch = arg.charAt(i);
+                if (ch >= 0x80) {
+                    break;
+                }
+                buf[off + i] = (byte) ch;
+            }
+            bufLen = off + i;
+        }
+        for (; i < chars; i++) {
+            if ((bufLen + 4) > buf.length) {
+                ensure(4);
+            }
+            ch = arg.charAt(i);
+            if (ch < 0x80) {
+                buf[bufLen++] = (byte) ch;
+            } else if (ch < 0x800) {
+                buf[bufLen++] = (byte) (0xC0 | (ch >> 6));
+                buf[bufLen++] = (byte) (0x80 | (ch & 0x3F));
+            } else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && ((i + 1) < chars)
+                        && Character.isLowSurrogate(arg.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(ch, arg.charAt(++i));
+                    buf[bufLen++] = (byte) (0xF0 | (cp >> 18));
+                    buf[bufLen++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[bufLen++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[bufLen++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buf[bufLen++] = '?';
+                }
+            } else {
+                buf[bufLen++] = (byte) (0xE0 | (ch >> 12));
+                buf[bufLen++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                buf[bufLen++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Payloads larger than the buffer are written directly to the stream.
+     */
+    private void writeBytes(byte[] b) throws IOException {
+        int len = b.length;
+        if ((out != null) && (len > buf.length) && (sizedDepth == 0)) {
+            if (out instanceof ChannelOutput) {
+                ((ChannelOutput) out).write(ByteBuffer.wrap(buf, 0, bufLen), ByteBuffer.wrap(b));
+                bufLen = 0;
+                return;
+            }
+            drain();
+            out.write(b);
+            return;
+        }
+        ensure(len);
+        System.arraycopy(b, 0, buf, bufLen, len);
+        bufLen += len;
     }
 
 }
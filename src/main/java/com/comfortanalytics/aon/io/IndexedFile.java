@@ -0,0 +1,251 @@
+package com.comfortanalytics.aon.io;
+
+import com.comfortanalytics.aon.Agroup;
+import com.comfortanalytics.aon.Alist;
+import com.comfortanalytics.aon.Aon;
+import com.comfortanalytics.aon.Aobj;
+import com.comfortanalytics.aon.MappedInput;
+import com.comfortanalytics.aon.Projection;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a file created by IndexedFileWriter.  Only the index is decoded when opened, documents
+ * are decoded from the memory mapped file on demand.
+ * <p>
+ * The file begins with a header of the 4 byte magic value AONI, a 2 byte version and 2 bytes
+ * that are reserved.  The documents follow, then the index, which is an Aon object with the
+ * lists keys, offsets and lengths in key order.  The last 12 bytes are the 8 byte offset of the
+ * index and the magic value again.  All numbers are big endian.
+ * <p>
+ * Instances are safe to use from multiple threads.
+ *
+ * @author Aaron Hansen
+ * @see IndexedFileWriter
+ */
+public class IndexedFile implements Closeable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The ascii characters AONI.
+     */
+    public static final int MAGIC = 0x414F4E49;
+
+    /**
+     * The version of the format written by IndexedFileWriter.
+     */
+    public static final short VERSION = 1;
+
+    static final int FOOTER_SIZE = 12;
+    static final int HEADER_SIZE = 8;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final FileChannel channel;
+    private final String[] keys;
+    private final long[] lengths;
+    private final long[] offsets;
+    private final ByteBuffer[] regions;
+    private final int window;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    public IndexedFile(File file) {
+        this(file, MappedInput.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param file   The file to open.
+     * @param window The maximum size of each mapped region of the file.  Documents that span
+     *               regions are mapped individually.
+     * @throws IllegalStateException If the file is not an indexed file, or its version is not
+     *                               supported.
+     */
+    public IndexedFile(File file, int window) {
+        this.window = window;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        try {
+            long size = channel.size();
+            if (size < (HEADER_SIZE + FOOTER_SIZE)) {
+                throw new IllegalStateException("Not an indexed file: " + file);
+            }
+            regions = new ByteBuffer[(int) ((size + window - 1) / window)];
+            for (int i = 0; i < regions.length; i++) {
+                long pos = (long) i * window;
+                regions[i] = channel.map(MapMode.READ_ONLY, pos, Math.min(window, size - pos));
+            }
+            ByteBuffer header = slice(0, HEADER_SIZE);
+            ByteBuffer footer = slice(size - FOOTER_SIZE, FOOTER_SIZE);
+            if ((header.getInt() != MAGIC) || (footer.getInt(8) != MAGIC)) {
+                throw new IllegalStateException("Not an indexed file: " + file);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported version: " + version);
+            }
+            long indexOffset = footer.getLong();
+            long indexEnd = size - FOOTER_SIZE;
+            if ((indexOffset < HEADER_SIZE) || (indexOffset > indexEnd)) {
+                throw new IllegalStateException("Invalid index offset: " + indexOffset);
+            }
+            Aobj index = Aon.aonReader(slice(indexOffset, indexEnd - indexOffset)).getObj();
+            Alist list = index.get("keys").toList();
+            keys = new String[list.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = list.getString(i);
+            }
+            offsets = toLongs(index.get("offsets").toList());
+            lengths = toLongs(index.get("lengths").toList());
+            if ((offsets.length != keys.length) || (lengths.length != keys.length)) {
+                throw new IllegalStateException("Invalid index");
+            }
+        } catch (IOException x) {
+            close();
+            throw new RuntimeException(x);
+        } catch (RuntimeException x) {
+            close();
+            throw x;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Decodes the document with the key.
+     *
+     * @return Null if there is no such key.
+     */
+    public <T extends Agroup> T get(String key) {
+        return get(key, null);
+    }
+
+    /**
+     * Decodes the selected parts of the document with the key.
+     *
+     * @param projection Null decodes the entire document.
+     * @return Null if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Agroup> T get(String key, Projection projection) {
+        AonReader reader = getReader(key);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            if (projection == null) {
+                return (T) reader.getValue().toGroup();
+            }
+            switch (reader.next()) {
+                case BEGIN_LIST:
+                    return (T) reader.getList(projection);
+                case BEGIN_OBJ:
+                    return (T) reader.getObj(projection);
+                default:
+                    throw new IllegalStateException("Expecting a list or object");
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The key at the position in the index, which is sorted.
+     */
+    public String getKey(int idx) {
+        return keys[idx];
+    }
+
+    /**
+     * Returns a reader of the document with the key, for decoding it token by token.
+     *
+     * @return Null if there is no such key.
+     */
+    public AonReader getReader(String key) {
+        int idx = indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        try {
+            return Aon.aonReader(slice(offsets[idx], lengths[idx]));
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * The position of the key in the index, or a negative number if it is not present.
+     */
+    public int indexOf(String key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * The number of documents.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns a view of a range of the file.  Ranges within a region share its mapping.
+     */
+    private ByteBuffer slice(long offset, long len) throws IOException {
+        if ((len < 0) || (len > Integer.MAX_VALUE)) {
+            throw new IllegalStateException("Invalid length: " + len);
+        }
+        int idx = (int) (offset / window);
+        long base = (long) idx * window;
+        if ((idx < regions.length) && ((offset + len) <= (base + regions[idx].capacity()))) {
+            ByteBuffer ret = regions[idx].duplicate();
+            ret.position((int) (offset - base));
+            ret.limit((int) (offset - base + len));
+            return ret.slice();
+        }
+        return channel.map(MapMode.READ_ONLY, offset, len);
+    }
+
+    private static long[] toLongs(Alist list) {
+        long[] ret = new long[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.getLong(i);
+        }
+        return ret;
+    }
+
+}
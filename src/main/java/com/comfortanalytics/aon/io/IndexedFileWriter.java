@@ -0,0 +1,139 @@
+package com.comfortanalytics.aon.io;
+
+import com.comfortanalytics.aon.Agroup;
+import com.comfortanalytics.aon.Alist;
+import com.comfortanalytics.aon.Aobj;
+import com.comfortanalytics.aon.Atype;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Creates an indexed file, a sequence of keyed Aon documents followed by an index of where each
+ * one is, so that individual documents can be decoded without reading the rest of the file.
+ * <p>
+ * The index is held in memory and written on close, which must be called or the file will be
+ * unreadable.
+ *
+ * @author Aaron Hansen
+ * @see IndexedFile
+ */
+public class IndexedFileWriter implements Closeable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final FileChannel channel;
+    private final TreeMap<String, long[]> index = new TreeMap<>();
+    private final AonWriter writer;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Replaces the file if it already exists.
+     */
+    public IndexedFileWriter(File file) {
+        try {
+            channel = FileChannel.open(file.toPath(),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(IndexedFile.HEADER_SIZE)
+                                          .putInt(IndexedFile.MAGIC)
+                                          .putShort(IndexedFile.VERSION)
+                                          .putShort((short) 0);
+            header.flip();
+            write(header);
+            writer = new AonWriter(channel);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the index and closes the file.
+     */
+    @Override
+    public void close() {
+        try {
+            long indexOffset = channel.position();
+            Alist keys = new Alist();
+            Alist offsets = new Alist(Atype.LONG);
+            Alist lengths = new Alist(Atype.LONG);
+            for (Map.Entry<String, long[]> e : index.entrySet()) {
+                keys.add(e.getKey());
+                offsets.add(e.getValue()[0]);
+                lengths.add(e.getValue()[1]);
+            }
+            writer.value(new Aobj()
+                                 .put("keys", keys)
+                                 .put("offsets", offsets)
+                                 .put("lengths", lengths));
+            ByteBuffer footer = ByteBuffer.allocate(IndexedFile.FOOTER_SIZE)
+                                          .putLong(indexOffset)
+                                          .putInt(IndexedFile.MAGIC);
+            footer.flip();
+            write(footer);
+            writer.close();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Whether a document has been written with the key.
+     */
+    public boolean containsKey(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Appends the document.
+     *
+     * @return This
+     * @throws IllegalArgumentException If the key has already been written.
+     */
+    public IndexedFileWriter put(String key, Agroup value) {
+        if (index.containsKey(key)) {
+            throw new IllegalArgumentException("Duplicate key: " + key);
+        }
+        try {
+            long start = channel.position();
+            writer.value(value).endRecord();
+            index.put(key, new long[]{start, channel.position() - start});
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        return this;
+    }
+
+    /**
+     * The number of documents written.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+}
@@ -31,6 +31,12 @@ public abstract class AbstractJsonWriter extends AbstractWriter implements Appen
             '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
     };
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private final char[] numChars = new char[NumberFormatter.MAX_CHARS];
+
     ///////////////////////////////////////////////////////////////////////////
     // Public Methods
     ///////////////////////////////////////////////////////////////////////////
@@ -74,40 +80,44 @@ public abstract class AbstractJsonWriter extends AbstractWriter implements Appen
         }
     }
 
+    /**
+     * Writes the shortest decimal that round trips.  Integral values under 10^18 are written
+     * as whole numbers followed by .0
+     */
     @Override
     protected void write(double arg) throws IOException {
-        if (arg == StrictMath.rint(arg)) {
-            write((long) arg);
-            append('.').append('0');
+        if (Double.isInfinite(arg) || Double.isNaN(arg)) {
+            append(C_NULL, 0, 4);
+        } else if ((arg == StrictMath.rint(arg)) && (Math.abs(arg) < 1e18)) {
+            int len = NumberFormatter.format((long) arg, numChars, 0);
+            numChars[len++] = '.';
+            numChars[len++] = '0';
+            append(numChars, 0, len);
         } else {
-            if (Double.isInfinite(arg) || Double.isNaN(arg)) {
-                append(C_NULL, 0, 4);
-            } else {
-                append(Double.toString(arg));
-            }
+            append(numChars, 0, NumberFormatter.format(arg, numChars, 0));
         }
     }
 
+    /**
+     * Writes the shortest decimal that round trips.  Integral values under 10^18 are written
+     * as whole numbers followed by .0
+     */
     @Override
     protected void write(float arg) throws IOException {
-        if (arg == StrictMath.rint(arg)) {
-            write((int) arg);
-            append('.').append('0');
+        if (Float.isInfinite(arg) || Float.isNaN(arg)) {
+            append(C_NULL, 0, 4);
+        } else if ((arg == StrictMath.rint(arg)) && (Math.abs(arg) < 1e18f)) {
+            int len = NumberFormatter.format((long) arg, numChars, 0);
+            numChars[len++] = '.';
+            numChars[len++] = '0';
+            append(numChars, 0, len);
         } else {
-            if (Float.isInfinite(arg) || Float.isNaN(arg)) {
-                append(C_NULL, 0, 4);
-            } else {
-                append(Float.toString(arg));
-            }
+            append(numChars, 0, NumberFormatter.format(arg, numChars, 0));
         }
     }
 
     protected void write(int val) throws IOException {
-        if (val == 0) {
-            append('0');
-            return;
-        }
-        append(Integer.toString(val));
+        write((long) val);
     }
 
     @Override
@@ -116,7 +126,7 @@ public abstract class AbstractJsonWriter extends AbstractWriter implements Appen
             append('0');
             return;
         }
-        append(Long.toString(val));
+        append(numChars, 0, NumberFormatter.format(val, numChars, 0));
     }
 
     @Override
@@ -202,6 +212,14 @@ public abstract class AbstractJsonWriter extends AbstractWriter implements Appen
         append(C_NULL, 0, 4);
     }
 
+    /**
+     * Newline delimited json.
+     */
+    @Override
+    protected void writeRecordEnd() throws IOException {
+        append('\n');
+    }
+
     @Override
     protected void writeSeparator() throws IOException {
         append(',');
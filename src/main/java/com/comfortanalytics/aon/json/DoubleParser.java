@@ -0,0 +1,157 @@
+package com.comfortanalytics.aon.json;
+
+import java.math.BigInteger;
+
+/**
+ * Correctly rounded conversion of a decimal significand and exponent to a double, without
+ * allocation.
+ * <p>
+ * Uses Clinger's fast path when both the significand and the power of ten are exactly
+ * representable, otherwise the Eisel-Lemire algorithm with a 128-bit approximation of the power
+ * of ten.  The rare inputs the algorithm can't decide, such as subnormals and exact halfway
+ * cases, return NaN so the caller can fall back to Double.parseDouble.
+ *
+ * @author Aaron Hansen
+ */
+final class DoubleParser {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    static final int MAX_POWER = 308;
+    static final int MIN_POWER = -342;
+
+    private static final double[] POW10 = new double[]{
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * The high and low 64 bits of the normalized 128-bit approximation of each power of ten,
+     * indexed by power - MIN_POWER.  Truncated for positive powers and rounded up for negative
+     * powers.
+     */
+    private static final long[] POW5_HI = new long[MAX_POWER - MIN_POWER + 1];
+    private static final long[] POW5_LO = new long[MAX_POWER - MIN_POWER + 1];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = MIN_POWER; q < 0; q++) {
+            BigInteger pow5 = five.pow(-q);
+            int z = pow5.bitLength();
+            int b = q >= -27 ? z + 127 : z + z + 128;
+            BigInteger c = BigInteger.ONE.shiftLeft(b).divide(pow5).add(BigInteger.ONE);
+            store(q, c.shiftRight(Math.max(c.bitLength() - 128, 0)));
+        }
+        BigInteger pow5 = BigInteger.ONE;
+        for (int q = 0; q <= MAX_POWER; q++) {
+            int shift = pow5.bitLength() - 128;
+            store(q, shift < 0 ? pow5.shiftLeft(-shift) : pow5.shiftRight(shift));
+            pow5 = pow5.multiply(five);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    private DoubleParser() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the double nearest to significand * 10^power, or NaN if it couldn't be determined.
+     *
+     * @param negative    Whether or not the result is negative.
+     * @param significand Treated as unsigned.
+     * @param power       The power of ten.
+     */
+    static double toDouble(boolean negative, long significand, int power) {
+        if ((power >= -22) && (power <= 22) && (significand >= 0)
+                && (significand <= (1L << 53))) {
+            double d = significand;
+            if (power < 0) {
+                d = d / POW10[-power];
+            } else {
+                d = d * POW10[power];
+            }
+            return negative ? -d : d;
+        }
+        if ((significand == 0) || (power < MIN_POWER)) {
+            return negative ? -0d : 0d;
+        }
+        if (power > MAX_POWER) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        int idx = power - MIN_POWER;
+        long factor = POW5_HI[idx];
+        long exponent = ((217706L * power) >> 16) + 1024 + 63;
+        int lz = Long.numberOfLeadingZeros(significand);
+        long sig = significand << lz;
+        long lower = sig * factor;
+        long upper = multiplyHigh(sig, factor);
+        if (((upper & 0x1FF) == 0x1FF) && Long.compareUnsigned(lower + sig, lower) < 0) {
+            //the product may be off by one, refine it with the low bits of the power
+            long factorLow = POW5_LO[idx];
+            long productLow = sig * factorLow;
+            long productMiddle = lower + multiplyHigh(sig, factorLow);
+            if (Long.compareUnsigned(productMiddle, lower) < 0) {
+                upper++;
+            }
+            if ((productMiddle + 1 == 0) && ((upper & 0x1FF) == 0x1FF)
+                    && Long.compareUnsigned(productLow + sig, productLow) < 0) {
+                return Double.NaN;
+            }
+            lower = productMiddle;
+        }
+        long upperBit = upper >>> 63;
+        long mantissa = upper >>> (upperBit + 9);
+        lz += (int) (1 ^ upperBit);
+        if ((lower == 0) && ((upper & 0x1FF) == 0) && ((mantissa & 3) == 1)) {
+            //halfway between two doubles
+            return Double.NaN;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (1L << 53)) {
+            mantissa = 1L << 52;
+            lz--;
+        }
+        mantissa &= ~(1L << 52);
+        long realExponent = exponent - lz;
+        if ((realExponent < 1) || (realExponent > 2046)) {
+            //subnormal or overflow
+            return Double.NaN;
+        }
+        mantissa |= realExponent << 52;
+        if (negative) {
+            mantissa |= 1L << 63;
+        }
+        return Double.longBitsToDouble(mantissa);
+    }
+
+    /**
+     * The high 64 bits of the unsigned 128-bit product.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        long signed = x1 * y1 + z0 + (z1 >> 32);
+        return signed + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private static void store(int power, BigInteger value) {
+        POW5_HI[power - MIN_POWER] = value.shiftRight(64).longValue();
+        POW5_LO[power - MIN_POWER] = value.longValue();
+    }
+
+}
@@ -2,23 +2,25 @@ package com.comfortanalytics.aon.json;
 
 import com.comfortanalytics.aon.AbstractReader;
 import com.comfortanalytics.aon.Astr;
+import com.comfortanalytics.aon.MappedInput;
+import com.comfortanalytics.aon.SymbolTable;
 import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
- * Json implementation of Areader.
+ * Json implementation of Areader that decodes chars.  For UTF-8 input, JsonUtf8Reader avoids the
+ * charset decoding pass and is what Aon uses by default.
  *
+ * @see JsonUtf8Reader
  * @author Aaron Hansen
  */
 @SuppressWarnings("unused")
@@ -32,27 +34,6 @@ public class JsonReader extends AbstractReader {
     private static final int[] RUE = new int[]{'r', 'u', 'e'};
     private static final int[] ULL = new int[]{'u', 'l', 'l'};
 
-    static final long[] POWS = new long[]{
-            1,
-            10,
-            100,
-            1000,
-            10000,
-            100000,
-            1000000,
-            10000000,
-            100000000,
-            1000000000,
-            10000000000L,
-            100000000000L,
-            1000000000000L,
-            10000000000000L,
-            100000000000000L,
-            1000000000000000L,
-            10000000000000000L,
-            100000000000000000L,
-            1000000000000000000L};
-
     ///////////////////////////////////////////////////////////////////////////
     // Instance Fields
     ///////////////////////////////////////////////////////////////////////////
@@ -63,6 +44,8 @@ public class JsonReader extends AbstractReader {
     private final char[] inChars = new char[2048];
     private int inLen;
     private int inOff;
+    private long inPos;
+    private long tokenPos;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
@@ -84,14 +67,21 @@ public class JsonReader extends AbstractReader {
         this(new InputStreamReader(in, charset));
     }
 
-    ///////////////////////////////////////////////////////////////////////////
-    // Public Methods
-    ///////////////////////////////////////////////////////////////////////////
-
     public JsonReader(Reader in) {
         this.in = in;
     }
 
+    /**
+     * For subclasses that provide their own input.
+     */
+    JsonReader() {
+        this.in = null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
     @Override
     public void close() {
         try {
@@ -101,9 +91,14 @@ public class JsonReader extends AbstractReader {
         }
     }
 
-    ///////////////////////////////////////////////////////////////////////////
-    // Private Methods
-    ///////////////////////////////////////////////////////////////////////////
+    /**
+     * The position of the first char of the token last returned by next(), relative to the
+     * beginning of the input.
+     */
+    @Override
+    public long getOffset() {
+        return tokenPos;
+    }
 
     @Override
     public Token next() {
@@ -111,6 +106,7 @@ public class JsonReader extends AbstractReader {
             int ch;
             while (true) {
                 ch = readChar();
+                tokenPos = inPos + inOff - 1;
                 switch (ch) {
                     case '[':
                         return setBeginList();
@@ -155,6 +151,186 @@ public class JsonReader extends AbstractReader {
         }
     }
 
+    /**
+     * Scans for structural characters, nothing is decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipChildren() {
+        Token ret = last();
+        if ((ret != Token.BEGIN_LIST) && (ret != Token.BEGIN_OBJ)) {
+            return ret;
+        }
+        try {
+            int depth = 1;
+            while (depth > 0) {
+                switch (readChar()) {
+                    case '"':
+                        skipString();
+                        break;
+                    case '[':
+                    case '{':
+                        depth++;
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        break;
+                    case -1:
+                        throw new EOFException();
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        if (ret == Token.BEGIN_OBJ) {
+            return setEndObj();
+        }
+        return setEndList();
+    }
+
+    /**
+     * Scans for the end of the value, nothing is decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipValue() {
+        return skipNext(true);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Protected Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected Token skipScalar() {
+        return skipNext(false);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the value of a hex digit, or -1 if the char is not one.
+     */
+    static int hexValue(int ch) {
+        if ((ch >= '0') && (ch <= '9')) {
+            return ch - '0';
+        }
+        if ((ch >= 'a') && (ch <= 'f')) {
+            return ch - 'a' + 10;
+        }
+        if ((ch >= 'A') && (ch <= 'F')) {
+            return ch - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the number chars and sets the next token.  Integers are longs, or BigIntegers if
+     * they don't fit.  Numbers with a fraction or exponent are correctly rounded doubles.
+     *
+     * @param buf Contains only the number chars, starting at index 0.
+     * @param len The number of chars.
+     */
+    Token setNumber(char[] buf, int len) {
+        int idx = 0;
+        boolean negative = false;
+        if (buf[0] == '-') {
+            negative = true;
+            idx++;
+        } else if (buf[0] == '+') {
+            idx++;
+        }
+        //up to 19 significant digits fit in an unsigned long
+        long sig = 0;
+        int digits = 0;
+        int power = 0;
+        boolean any = false;
+        boolean dec = false;
+        boolean exp = false;
+        boolean truncated = false;
+        char ch;
+        for (; idx < len; idx++) {
+            ch = buf[idx];
+            if ((ch >= '0') && (ch <= '9')) {
+                any = true;
+                if (digits < 19) {
+                    sig = (sig * 10) + (ch - '0');
+                    if (sig != 0) {
+                        digits++;
+                    }
+                    if (dec) {
+                        power--;
+                    }
+                } else {
+                    if (ch != '0') {
+                        truncated = true;
+                    }
+                    if (!dec) {
+                        power++;
+                    }
+                }
+            } else if ((ch == '.') && !dec) {
+                dec = true;
+            } else if (((ch == 'e') || (ch == 'E')) && any) {
+                exp = true;
+                break;
+            } else {
+                return setNext(parseDouble(buf, len));
+            }
+        }
+        if (!any) {
+            return setNext(parseDouble(buf, len));
+        }
+        if (exp) {
+            if (++idx == len) {
+                return setNext(parseDouble(buf, len));
+            }
+            boolean negExp = false;
+            if (buf[idx] == '-') {
+                negExp = true;
+                idx++;
+            } else if (buf[idx] == '+') {
+                idx++;
+            }
+            if (idx == len) {
+                return setNext(parseDouble(buf, len));
+            }
+            int val = 0;
+            for (; idx < len; idx++) {
+                ch = buf[idx];
+                if ((ch < '0') || (ch > '9')) {
+                    return setNext(parseDouble(buf, len));
+                }
+                if (val < 100000) {
+                    val = (val * 10) + (ch - '0');
+                }
+            }
+            power += negExp ? -val : val;
+        } else if (!dec) {
+            if ((power == 0) && (sig >= 0)) {
+                return setNext(negative ? -sig : sig);
+            }
+            if ((power == 0) && negative && (sig == Long.MIN_VALUE)) {
+                return setNext(Long.MIN_VALUE);
+            }
+            return setNext(new BigInteger(new String(buf, 0, len)));
+        }
+        double d = DoubleParser.toDouble(negative, sig, power);
+        if (truncated && (d != DoubleParser.toDouble(negative, sig + 1, power))) {
+            //the dropped digits affect the result
+            d = Double.NaN;
+        }
+        if (Double.isNaN(d)) {
+            return setNext(parseDouble(buf, len));
+        }
+        return setNext(d);
+    }
+
     private void bufAppend(char b) {
         int len = bufLen;
         if (len == bufChars.length) {
@@ -172,48 +348,29 @@ public class JsonReader extends AbstractReader {
         }
     }
 
-    private static long decodeLong(char[] buf, int idx, int end) {
-        char ch = buf[idx];
-        long ret = 0;
-        if (ch == '-') {
-            ++idx;
-            while (idx < end) {
-                ret = ((ret << 1) + (ret << 3)) + buf[idx++] - '0';
-            }
-            return -ret;
-        }
-        if (ch == '+') {
-            ++idx;
-        }
-        while (idx < end) {
-            ret = ((ret << 1) + (ret << 3)) + buf[idx++] - '0';
-        }
-        return ret;
-    }
-
-    private Token decodeNumber(char[] buf, int len, int decIdx) {
-        if (decIdx < 0) {
-            return setNext(decodeLong(buf, 0, len));
+    private static InputStream fis(File file) {
+        InputStream in = MappedInput.open(file);
+        if (in instanceof MappedInput) {
+            return in;
         }
-        return setNext(
-                decodeLong(buf, 0, decIdx) +
-                        ((double) decodeLong(buf, ++decIdx, len) / POWS[len - decIdx]));
+        return new BufferedInputStream(in);
     }
 
-    private static InputStream fis(File file) {
-        try {
-            return new BufferedInputStream(new FileInputStream(file));
-        } catch (FileNotFoundException x) {
-            throw new RuntimeException(x);
-        }
+    /**
+     * The slow path for numbers the fast parser can't decide, and for malformed numbers.
+     */
+    private static double parseDouble(char[] buf, int len) {
+        return Double.parseDouble(new String(buf, 0, len));
     }
 
     private int readChar() throws IOException {
         if (inLen == 0) {
             inLen = in.read(inChars, 0, inChars.length);
             if (inLen <= 0) {
+                inLen = 0;
                 return -1;
             }
+            inPos += inOff;
             inOff = 0;
         }
         --inLen;
@@ -222,22 +379,16 @@ public class JsonReader extends AbstractReader {
 
     private Token readNumber(int ch) throws IOException {
         bufLen = 0;
-        int dec = -1;
-        boolean exp = false;
         while (true) {
             if (ch < '0') {
-                if (ch == '.') {
-                    dec = bufLen;
-                } else if (ch == -1) {
+                if (ch == -1) {
                     return setEndInput();
-                } else if (ch != '-' && ch != '+') {
+                } else if (ch != '.' && ch != '-' && ch != '+') {
                     unreadChar();
                     break;
                 }
             } else if (ch > '9') {
-                if (ch == 'e' || ch == 'E') {
-                    exp = true;
-                } else {
+                if (ch != 'e' && ch != 'E') {
                     unreadChar();
                     break;
                 }
@@ -245,17 +396,7 @@ public class JsonReader extends AbstractReader {
             bufAppend((char) ch);
             ch = readChar();
         }
-        try {
-            if (exp) {
-                if (dec < 0) {
-                    return setNext(Long.parseLong(new String(bufChars, 0, bufLen)));
-                }
-                return setNext(Double.parseDouble(new String(bufChars, 0, bufLen)));
-            }
-            return decodeNumber(bufChars, bufLen, dec);
-        } catch (Exception x) {
-            return setNext(new BigDecimal(new String(bufChars, 0, bufLen)));
-        }
+        return setNumber(bufChars, bufLen);
     }
 
     private String readString() throws IOException {
@@ -290,6 +431,7 @@ public class JsonReader extends AbstractReader {
                         break;
                     case '\\':
                         bufAppend('\\');
+                        break;
                     case '/':
                         bufAppend('/');
                         break;
@@ -307,53 +449,120 @@ public class JsonReader extends AbstractReader {
         if (bufLen == 0) {
             return Astr.EMPTY.get();
         }
+        SymbolTable symbols = nextSymbols();
+        if (symbols != null) {
+            return symbols.get(bufChars, 0, bufLen);
+        }
         return new String(bufChars, 0, bufLen);
     }
 
     private char readUnicode() throws IOException {
         int ret = 0;
         int ch;
+        int val;
         for (int i = 0; i < 4; i++) {
-            switch (ch = readChar()) {
-                case '0':
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                    ret = (ret << 4) + ch - '0';
-                    break;
-                case 'a':
-                case 'b':
-                case 'c':
-                case 'd':
-                case 'e':
-                case 'f':
-                    ret = (ret << 4) + (ch - 'a') + 10;
-                    break;
-                case 'A':
-                case 'B':
-                case 'C':
-                case 'D':
-                case 'E':
-                case 'F':
-                    ret = (ret << 4) + (ch - 'A') + 10;
-                    break;
-                default:
-                    if (ch < 0) {
-                        throw new EOFException();
-                    }
-                    throw new IllegalStateException(
-                            "Illegal character in unicode escape: " + (char) ch);
+            ch = readChar();
+            val = hexValue(ch);
+            if (val < 0) {
+                if (ch < 0) {
+                    throw new EOFException();
+                }
+                throw new IllegalStateException(
+                        "Illegal character in unicode escape: " + (char) ch);
             }
+            ret = (ret << 4) + val;
         }
         return (char) ret;
     }
 
+    /**
+     * Advances past a number, true, false or null, whose first char has been read.
+     */
+    private void skipLiteral() throws IOException {
+        while (true) {
+            int ch = readChar();
+            switch (ch) {
+                case -1:
+                    return;
+                case ',':
+                case ':':
+                case ']':
+                case '}':
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    unreadChar();
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Implements skipValue and skipScalar, nothing is decoded.
+     *
+     * @param children Whether to skip the contents of a list or object, or leave it begun.
+     */
+    private Token skipNext(boolean children) {
+        try {
+            while (true) {
+                int ch = readChar();
+                tokenPos = inPos + inOff - 1;
+                switch (ch) {
+                    case '[':
+                        setBeginList();
+                        if (children) {
+                            skipChildren();
+                        }
+                        return Token.BEGIN_LIST;
+                    case '{':
+                        setBeginObj();
+                        if (children) {
+                            skipChildren();
+                        }
+                        return Token.BEGIN_OBJ;
+                    case ']':
+                        return setEndList();
+                    case '}':
+                        return setEndObj();
+                    case -1:
+                        return setEndInput();
+                    case '"':
+                        skipString();
+                        return setNextNull();
+                    case ',':
+                    case ':':
+                    case ' ':
+                    case '\t':
+                    case '\n':
+                    case '\r':
+                        break;
+                    default:
+                        skipLiteral();
+                        return setNextNull();
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Advances past the closing quote of a string whose opening quote has been read.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            int ch = readChar();
+            if (ch == '"') {
+                return;
+            } else if (ch == '\\') {
+                readChar();
+            } else if (ch < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
     private void unreadChar() {
         ++inLen;
         --inOff;
@@ -0,0 +1,585 @@
+package com.comfortanalytics.aon.json;
+
+import com.comfortanalytics.aon.Astr;
+import com.comfortanalytics.aon.MappedInput;
+import com.comfortanalytics.aon.SymbolTable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Json implementation of Areader that tokenizes UTF-8 bytes directly, rather than decoding them
+ * to chars first.
+ * <p>
+ * Structure, literals and numbers are all ascii so they are read straight from an internal byte
+ * array.  Strings without escapes that lie within the array are created from it in one step,
+ * only strings that contain escapes or span refills are decoded byte by byte.  When constructed
+ * with a byte array, that array is decoded in place.
+ *
+ * @author Aaron Hansen
+ */
+@SuppressWarnings("unused")
+public class JsonUtf8Reader extends JsonReader {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int BUF_SIZE = 8192;
+    private static final int REPLACEMENT = 0xFFFD;
+
+    private static final int[] ALSE = new int[]{'a', 'l', 's', 'e'};
+    private static final int[] RUE = new int[]{'r', 'u', 'e'};
+    private static final int[] ULL = new int[]{'u', 'l', 'l'};
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Instance Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private byte[] buf;
+    private int bufEnd;
+    private int bufOff;
+    private long bufPos;
+    private char[] chars = new char[256];
+    private int charsLen;
+    private final InputStream in;
+    private long tokenPos;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Decodes the entire array, which will not be copied.
+     */
+    public JsonUtf8Reader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes a range of the array, which will not be copied.
+     *
+     * @param buf The encoded document.
+     * @param off The index of the first byte to decode.
+     * @param len The number of bytes to decode.
+     */
+    public JsonUtf8Reader(byte[] buf, int off, int len) {
+        if ((off < 0) || (len < 0) || ((off + len) > buf.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buf = buf;
+        this.bufOff = off;
+        this.bufEnd = off + len;
+        this.bufPos = -off;
+        this.in = null;
+    }
+
+    public JsonUtf8Reader(File file) {
+        this(fis(file));
+    }
+
+    public JsonUtf8Reader(InputStream in) {
+        this(in, BUF_SIZE);
+    }
+
+    /**
+     * @param in      The stream to decode.
+     * @param bufSize The size of the internal buffer.
+     */
+    public JsonUtf8Reader(InputStream in, int bufSize) {
+        this.in = in;
+        this.buf = new byte[Math.max(bufSize, 16)];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void close() {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * The position of the first byte of the token last returned by next(), relative to the
+     * beginning of the input.
+     */
+    @Override
+    public long getOffset() {
+        return tokenPos;
+    }
+
+    @Override
+    public Token next() {
+        try {
+            int ch;
+            while (true) {
+                if (bufOff < bufEnd) {
+                    ch = buf[bufOff++] & 0xFF;
+                } else {
+                    ch = read();
+                }
+                tokenPos = bufPos + bufOff - 1;
+                switch (ch) {
+                    case '[':
+                        return setBeginList();
+                    case '{':
+                        return setBeginObj();
+                    case ']':
+                        return setEndList();
+                    case '}':
+                        return setEndObj();
+                    case -1:
+                        return setEndInput();
+                    //values
+                    case '"':
+                        return setNext(readString());
+                    case 't':
+                        validateNextBytes(RUE);
+                        return setNext(true);
+                    case 'f':
+                        validateNextBytes(ALSE);
+                        return setNext(false);
+                    case 'n':
+                        validateNextBytes(ULL);
+                        return setNextNull();
+                    case '-':
+                    case '+':
+                    case '.':
+                    case '0':
+                    case '1':
+                    case '2':
+                    case '3':
+                    case '4':
+                    case '5':
+                    case '6':
+                    case '7':
+                    case '8':
+                    case '9':
+                        return readNumber(ch);
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Scans for structural characters, nothing is decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipChildren() {
+        Token ret = last();
+        if ((ret != Token.BEGIN_LIST) && (ret != Token.BEGIN_OBJ)) {
+            return ret;
+        }
+        try {
+            int depth = 1;
+            int ch;
+            while (depth > 0) {
+                if (bufOff < bufEnd) {
+                    ch = buf[bufOff++] & 0xFF;
+                } else {
+                    ch = read();
+                }
+                switch (ch) {
+                    case '"':
+                        skipString();
+                        break;
+                    case '[':
+                    case '{':
+                        depth++;
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        break;
+                    case -1:
+                        throw new EOFException();
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        if (ret == Token.BEGIN_OBJ) {
+            return setEndObj();
+        }
+        return setEndList();
+    }
+
+    /**
+     * Scans for the end of the value, nothing is decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipValue() {
+        return skipNext(true);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Protected Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected Token skipScalar() {
+        return skipNext(false);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void append(char ch) {
+        if (charsLen == chars.length) {
+            if (chars.length < 131072) {
+                chars = Arrays.copyOf(chars, chars.length + chars.length);
+            } else {
+                chars = Arrays.copyOf(chars, chars.length + 131072);
+            }
+        }
+        chars[charsLen++] = ch;
+    }
+
+    private void appendCodePoint(int cp) {
+        if (cp < 0x10000) {
+            append((char) cp);
+        } else {
+            append(Character.highSurrogate(cp));
+            append(Character.lowSurrogate(cp));
+        }
+    }
+
+    private static InputStream fis(File file) {
+        return MappedInput.open(file);
+    }
+
+    /**
+     * Returns the next byte, refilling the buffer if necessary, or -1 at the end of input.
+     */
+    private int read() throws IOException {
+        if (bufOff == bufEnd) {
+            if (in == null) {
+                return -1;
+            }
+            int count = in.read(buf, 0, buf.length);
+            while (count == 0) {
+                count = in.read(buf, 0, buf.length);
+            }
+            if (count < 0) {
+                return -1;
+            }
+            bufPos += bufEnd;
+            bufOff = 0;
+            bufEnd = count;
+        }
+        return buf[bufOff++] & 0xFF;
+    }
+
+    private Token readNumber(int ch) throws IOException {
+        charsLen = 0;
+        while (true) {
+            if (ch < '0') {
+                if (ch == -1) {
+                    break;
+                } else if (ch != '.' && ch != '-' && ch != '+') {
+                    unread();
+                    break;
+                }
+            } else if (ch > '9') {
+                if (ch != 'e' && ch != 'E') {
+                    unread();
+                    break;
+                }
+            }
+            append((char) ch);
+            ch = read();
+        }
+        return setNumber(chars, charsLen);
+    }
+
+    /**
+     * Creates the string directly from the buffer when possible, otherwise decodes it byte by
+     * byte.
+     */
+    private String readString() throws IOException {
+        byte[] buf = this.buf;
+        int start = bufOff;
+        boolean ascii = true;
+        for (int i = start, end = bufEnd; i < end; i++) {
+            byte b = buf[i];
+            if (b == '"') {
+                bufOff = i + 1;
+                if (i == start) {
+                    return Astr.EMPTY.get();
+                }
+                SymbolTable symbols = nextSymbols();
+                if (symbols != null) {
+                    return symbols.get(buf, start, i - start);
+                }
+                if (ascii) {
+                    return new String(buf, start, i - start, StandardCharsets.ISO_8859_1);
+                }
+                return new String(buf, start, i - start, StandardCharsets.UTF_8);
+            } else if (b == '\\') {
+                break;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        return readStringSlow();
+    }
+
+    private String readStringSlow() throws IOException {
+        charsLen = 0;
+        int ch = read();
+        while (ch != '"') {
+            if (ch < 0) {
+                throw new EOFException();
+            } else if (ch == '\\') {
+                ch = read();
+                switch (ch) {
+                    case 'u':
+                        append(readUnicode());
+                        break;
+                    case 'b':
+                        append('\b');
+                        break;
+                    case 'f':
+                        append('\f');
+                        break;
+                    case 'n':
+                        append('\n');
+                        break;
+                    case 'r':
+                        append('\r');
+                        break;
+                    case 't':
+                        append('\t');
+                        break;
+                    case '"':
+                        append('"');
+                        break;
+                    case '\\':
+                        append('\\');
+                        break;
+                    case '/':
+                        append('/');
+                        break;
+                    default:
+                        if (ch < 0) {
+                            throw new EOFException();
+                        }
+                        throw new IOException("Unexpected char: " + ch);
+                }
+            } else if (ch < 0x80) {
+                append((char) ch);
+            } else {
+                appendCodePoint(readUtf8(ch));
+            }
+            ch = read();
+        }
+        if (charsLen == 0) {
+            return Astr.EMPTY.get();
+        }
+        SymbolTable symbols = nextSymbols();
+        if (symbols != null) {
+            return symbols.get(chars, 0, charsLen);
+        }
+        return new String(chars, 0, charsLen);
+    }
+
+    private char readUnicode() throws IOException {
+        int ret = 0;
+        int ch;
+        int val;
+        for (int i = 0; i < 4; i++) {
+            ch = read();
+            val = hexValue(ch);
+            if (val < 0) {
+                if (ch < 0) {
+                    throw new EOFException();
+                }
+                throw new IllegalStateException(
+                        "Illegal character in unicode escape: " + (char) ch);
+            }
+            ret = (ret << 4) + val;
+        }
+        return (char) ret;
+    }
+
+    /**
+     * Decodes a multi-byte sequence.  Malformed sequences, including overlong encodings and
+     * surrogates, are replaced with U+FFFD the same as the String constructor: an invalid second
+     * byte replaces only the lead byte, a surrogate replaces the whole sequence.
+     *
+     * @param ch The lead byte, which has already been read.
+     */
+    private int readUtf8(int ch) throws IOException {
+        int ret;
+        int count;
+        //the valid range of the second byte, which excludes overlong and out of range sequences
+        int lo = 0x80;
+        int hi = 0xBF;
+        if ((ch >= 0xF5) || (ch < 0xC2)) {
+            return REPLACEMENT;
+        } else if (ch >= 0xF0) {
+            ret = ch & 0x07;
+            count = 3;
+        } else if (ch >= 0xE0) {
+            ret = ch & 0x0F;
+            count = 2;
+        } else {
+            ret = ch & 0x1F;
+            count = 1;
+        }
+        if (ch == 0xE0) {
+            lo = 0xA0;
+        } else if (ch == 0xF0) {
+            lo = 0x90;
+        } else if (ch == 0xF4) {
+            hi = 0x8F;
+        }
+        while (--count >= 0) {
+            ch = read();
+            if ((ch < lo) || (ch > hi)) {
+                if (ch >= 0) {
+                    unread();
+                }
+                return REPLACEMENT;
+            }
+            lo = 0x80;
+            hi = 0xBF;
+            ret = (ret << 6) | (ch & 0x3F);
+        }
+        if ((ret >= Character.MIN_SURROGATE) && (ret <= Character.MAX_SURROGATE)) {
+            return REPLACEMENT;
+        }
+        return ret;
+    }
+
+    /**
+     * Advances past a number, true, false or null, whose first char has been read.
+     */
+    private void skipLiteral() throws IOException {
+        while (true) {
+            int ch = read();
+            switch (ch) {
+                case -1:
+                    return;
+                case ',':
+                case ':':
+                case ']':
+                case '}':
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    unread();
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Implements skipValue and skipScalar, nothing is decoded.
+     *
+     * @param children Whether to skip the contents of a list or object, or leave it begun.
+     */
+    private Token skipNext(boolean children) {
+        try {
+            while (true) {
+                int ch = read();
+                tokenPos = bufPos + bufOff - 1;
+                switch (ch) {
+                    case '[':
+                        setBeginList();
+                        if (children) {
+                            skipChildren();
+                        }
+                        return Token.BEGIN_LIST;
+                    case '{':
+                        setBeginObj();
+                        if (children) {
+                            skipChildren();
+                        }
+                        return Token.BEGIN_OBJ;
+                    case ']':
+                        return setEndList();
+                    case '}':
+                        return setEndObj();
+                    case -1:
+                        return setEndInput();
+                    case '"':
+                        skipString();
+                        return setNextNull();
+                    case ',':
+                    case ':':
+                    case ' ':
+                    case '\t':
+                    case '\n':
+                    case '\r':
+                        break;
+                    default:
+                        skipLiteral();
+                        return setNextNull();
+                }
+            }
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Advances past the closing quote of a string whose opening quote has been read.
+     */
+    private void skipString() throws IOException {
+        int ch;
+        while (true) {
+            if (bufOff < bufEnd) {
+                ch = buf[bufOff++] & 0xFF;
+            } else {
+                ch = read();
+            }
+            if (ch == '"') {
+                return;
+            } else if (ch == '\\') {
+                read();
+            } else if (ch < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Only valid immediately after a successful read.
+     */
+    private void unread() {
+        --bufOff;
+    }
+
+    private void validateNextBytes(int[] bytes) throws IOException {
+        for (int b : bytes) {
+            int ch = read();
+            if (ch != b) {
+                if (ch == -1) {
+                    throw new EOFException();
+                }
+                throw new IllegalStateException("Expecting " + b + ", but got " + ch);
+            }
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.comfortanalytics.aon.json;
 
+import com.comfortanalytics.aon.ByteBufferOutput;
+import com.comfortanalytics.aon.ChannelOutput;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -8,8 +10,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
 
 /**
  * Json implementation of Awriter intended for OutputStreams and Writers.  While JsonAppender can
@@ -39,6 +44,15 @@ public class JsonWriter extends AbstractJsonWriter {
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Encodes UTF-8 into the caller's buffers.
+     *
+     * @see ByteBufferOutput
+     */
+    public JsonWriter(ByteBuffer buf, UnaryOperator<ByteBuffer> onFull) {
+        this(new ByteBufferOutput(buf, onFull));
+    }
+
     public JsonWriter(File file) {
         this(fos(file), StandardCharsets.UTF_8);
     }
@@ -55,6 +69,13 @@ public class JsonWriter extends AbstractJsonWriter {
         this(new OutputStreamWriter(out, charset));
     }
 
+    /**
+     * Writes UTF-8 to the channel.
+     */
+    public JsonWriter(WritableByteChannel out) {
+        this(new ChannelOutput(out));
+    }
+
     public JsonWriter(Writer out) {
         this.out = out;
     }
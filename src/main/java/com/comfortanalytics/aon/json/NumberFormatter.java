@@ -0,0 +1,366 @@
+package com.comfortanalytics.aon.json;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers directly into a char array, without allocation.
+ * <p>
+ * Doubles and floats use the Schubfach algorithm to find the shortest decimal that rounds to
+ * the same binary value, choosing the closest when there are several.  The layout is the same
+ * as Double.toString: plain notation from 10^-3 up to 10^7, and computerized scientific notation
+ * otherwise.  Callers must handle NaN and infinity.
+ *
+ * @author Aaron Hansen
+ */
+final class NumberFormatter {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum number of chars written by any format method.
+     */
+    static final int MAX_CHARS = 32;
+
+    private static final long D_C_MIN = 1L << 52;
+    private static final int D_C_TINY = 3;
+    private static final int D_P = 53;
+    private static final int D_Q_MIN = -1074;
+    private static final int F_C_MIN = 1 << 23;
+    private static final int F_C_TINY = 8;
+    private static final int F_P = 24;
+    private static final int F_Q_MIN = -149;
+    private static final int K_MAX = 292;
+    private static final int K_MIN = -324;
+    private static final long MASK_32 = (1L << 32) - 1;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /**
+     * For each k, 10^-k = beta * 2^r where 2^125 <= beta < 2^126, and g = floor(beta) + 1.
+     * Stores g / 2^63 followed by g mod 2^63, indexed by (k - K_MIN) * 2.
+     */
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+    static {
+        BigInteger ten = BigInteger.TEN;
+        BigInteger beta;
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            if (k <= 0) {
+                BigInteger pow = ten.pow(-k);
+                int shift = 126 - pow.bitLength();
+                beta = shift < 0 ? pow.shiftRight(-shift) : pow.shiftLeft(shift);
+            } else {
+                BigInteger pow = ten.pow(k);
+                beta = BigInteger.ONE.shiftLeft(pow.bitLength() + 125).divide(pow);
+            }
+            beta = beta.add(BigInteger.ONE);
+            G[(k - K_MIN) << 1] = beta.shiftRight(63).longValue();
+            G[((k - K_MIN) << 1) + 1] = beta.longValue() & MASK_63;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    private NumberFormatter() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the shortest decimal that round trips to the finite value.
+     *
+     * @return The offset after the last char written.
+     */
+    static int format(double v, char[] buf, int off) {
+        long bits = Double.doubleToRawLongBits(v);
+        if (bits < 0) {
+            buf[off++] = '-';
+        }
+        long t = bits & (D_C_MIN - 1);
+        int bq = (int) (bits >>> (D_P - 1)) & 0x7FF;
+        if (bq != 0) {
+            int mq = -D_Q_MIN + 1 - bq;
+            long c = D_C_MIN | t;
+            if ((0 < mq) && (mq < D_P)) {
+                //integer values
+                long f = c >> mq;
+                if ((f << mq) == c) {
+                    return toChars(f, 0, buf, off);
+                }
+            }
+            return toDecimal(-mq, c, 0, buf, off);
+        }
+        if (t != 0) {
+            //subnormal
+            if (t < D_C_TINY) {
+                return toDecimal(D_Q_MIN, 10 * t, -1, buf, off);
+            }
+            return toDecimal(D_Q_MIN, t, 0, buf, off);
+        }
+        return zero(buf, off);
+    }
+
+    /**
+     * Writes the shortest decimal that round trips to the finite value.
+     *
+     * @return The offset after the last char written.
+     */
+    static int format(float v, char[] buf, int off) {
+        int bits = Float.floatToRawIntBits(v);
+        if (bits < 0) {
+            buf[off++] = '-';
+        }
+        int t = bits & (F_C_MIN - 1);
+        int bq = (bits >>> (F_P - 1)) & 0xFF;
+        if (bq != 0) {
+            int mq = -F_Q_MIN + 1 - bq;
+            int c = F_C_MIN | t;
+            if ((0 < mq) && (mq < F_P)) {
+                int f = c >> mq;
+                if ((f << mq) == c) {
+                    return toChars(f, 0, buf, off);
+                }
+            }
+            return toDecimal(-mq, c, 0, buf, off);
+        }
+        if (t != 0) {
+            if (t < F_C_TINY) {
+                return toDecimal(F_Q_MIN, 10 * t, -1, buf, off);
+            }
+            return toDecimal(F_Q_MIN, t, 0, buf, off);
+        }
+        return zero(buf, off);
+    }
+
+    /**
+     * Writes the decimal digits of the value.
+     *
+     * @return The offset after the last char written.
+     */
+    static int format(long v, char[] buf, int off) {
+        if (v < 0) {
+            buf[off++] = '-';
+            if (v == Long.MIN_VALUE) {
+                //can't be negated, the last digit is 8
+                off = format(-(v / 10), buf, off);
+                buf[off] = '8';
+                return off + 1;
+            }
+            v = -v;
+        }
+        int len = length(v);
+        writeDigits(v, buf, off, len);
+        return off + len;
+    }
+
+    private static int flog10pow2(int e) {
+        return (int) ((e * 661_971_961_083L) >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) ((e * 661_971_961_083L - 274_743_187_321L) >> 41);
+    }
+
+    private static int flog2pow10(int e) {
+        return (int) ((e * 913_124_641_741L) >> 38);
+    }
+
+    /**
+     * The number of decimal digits in the non-negative value.
+     */
+    private static int length(long v) {
+        int len = 1;
+        while (v >= 10) {
+            v /= 10;
+            len++;
+        }
+        return len;
+    }
+
+    /**
+     * The high 64 bits of the signed 128-bit product.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Rounds the product of g and cp to odd, for doubles.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    /**
+     * Rounds the product of g and cp to odd, for floats.
+     */
+    private static int rop(long g, long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (((x1 & MASK_32) + MASK_32) >>> 32));
+    }
+
+    /**
+     * Writes f * 10^e, where f is not zero.
+     */
+    private static int toChars(long f, int e, char[] buf, int off) {
+        while ((f % 10) == 0) {
+            f /= 10;
+            e++;
+        }
+        int len = length(f);
+        //the position of the decimal point relative to the first digit
+        int pt = e + len;
+        if ((0 < pt) && (pt <= 7)) {
+            if (len <= pt) {
+                writeDigits(f, buf, off, len);
+                off += len;
+                while (len++ < pt) {
+                    buf[off++] = '0';
+                }
+                buf[off++] = '.';
+                buf[off++] = '0';
+                return off;
+            }
+            writeDigits(f, buf, off + 1, len);
+            System.arraycopy(buf, off + 1, buf, off, pt);
+            buf[off + pt] = '.';
+            return off + len + 1;
+        }
+        if ((-3 < pt) && (pt <= 0)) {
+            buf[off++] = '0';
+            buf[off++] = '.';
+            while (pt++ < 0) {
+                buf[off++] = '0';
+            }
+            writeDigits(f, buf, off, len);
+            return off + len;
+        }
+        writeDigits(f, buf, off + 1, len);
+        buf[off] = buf[off + 1];
+        buf[off + 1] = '.';
+        off += len + 1;
+        if (len == 1) {
+            buf[off++] = '0';
+        }
+        buf[off++] = 'E';
+        return format((long) (pt - 1), buf, off);
+    }
+
+    private static int toDecimal(int q, long c, int dk, char[] buf, int off) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if ((c != D_C_MIN) || (q == D_Q_MIN)) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            //the lower neighbor is closer at a power of two
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[(k - K_MIN) << 1];
+        long g0 = G[((k - K_MIN) << 1) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = (vbl + out) <= (sp10 << 2);
+            boolean wpin = ((tp10 << 2) + out) <= vbr;
+            if (upin != wpin) {
+                return toChars(upin ? sp10 : tp10, k + dk, buf, off);
+            }
+        }
+        long t = s + 1;
+        boolean uin = (vbl + out) <= (s << 2);
+        boolean win = ((t << 2) + out) <= vbr;
+        if (uin != win) {
+            return toChars(uin ? s : t, k + dk, buf, off);
+        }
+        long cmp = vb - ((s + t) << 1);
+        boolean even = (cmp < 0) || ((cmp == 0) && ((s & 0x1) == 0));
+        return toChars(even ? s : t, k + dk, buf, off);
+    }
+
+    private static int toDecimal(int q, int c, int dk, char[] buf, int off) {
+        int out = c & 0x1;
+        long cb = ((long) c) << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if ((c != F_C_MIN) || (q == F_Q_MIN)) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+        long g = G[(k - K_MIN) << 1] + 1;
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) ((s * 1_717_986_919L) >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = (vbl + out) <= (sp10 << 2);
+            boolean wpin = ((tp10 << 2) + out) <= vbr;
+            if (upin != wpin) {
+                return toChars(upin ? sp10 : tp10, k + dk, buf, off);
+            }
+        }
+        int t = s + 1;
+        boolean uin = (vbl + out) <= (s << 2);
+        boolean win = ((t << 2) + out) <= vbr;
+        if (uin != win) {
+            return toChars(uin ? s : t, k + dk, buf, off);
+        }
+        int cmp = vb - ((s + t) << 1);
+        boolean even = (cmp < 0) || ((cmp == 0) && ((s & 0x1) == 0));
+        return toChars(even ? s : t, k + dk, buf, off);
+    }
+
+    /**
+     * Writes len digits of the non-negative value, starting at off.
+     */
+    private static void writeDigits(long v, char[] buf, int off, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            long q = v / 10;
+            buf[i] = (char) ('0' + (v - (q * 10)));
+            v = q;
+        }
+    }
+
+    private static int zero(char[] buf, int off) {
+        buf[off++] = '0';
+        buf[off++] = '.';
+        buf[off++] = '0';
+        return off;
+    }
+
+}
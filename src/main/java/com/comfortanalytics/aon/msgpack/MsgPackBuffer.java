@@ -293,6 +293,26 @@ class MsgPackBuffer extends InputStream {
         return sendTo(buf, off, len);
     }
 
+    /**
+     * Removes bytes from the internal buffer (which begins at index 0), shifting everything after
+     * them to the left.
+     *
+     * @param dest The logical offset of the first byte to remove.
+     * @param len  The number of bytes to remove.
+     */
+    public MsgPackBuffer remove(int dest, int len) {
+        if (offset > 0) {
+            System.arraycopy(buffer, offset, buffer, 0, length);
+            offset = 0;
+        }
+        if ((dest + len) > length) {
+            throw new IllegalArgumentException("Remove beyond the end of the buffer");
+        }
+        System.arraycopy(buffer, dest + len, buffer, dest, length - dest - len);
+        length -= len;
+        return this;
+    }
+
     /**
      * Overwrites byte in the internal buffer.
      *
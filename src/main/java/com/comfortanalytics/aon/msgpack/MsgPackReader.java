@@ -1,9 +1,13 @@
 package com.comfortanalytics.aon.msgpack;
 
 import com.comfortanalytics.aon.AbstractReader;
+import com.comfortanalytics.aon.MappedInput;
+import com.comfortanalytics.aon.SymbolTable;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
@@ -12,9 +16,13 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
 /**
  * MsgPack implementation of Areader.
+ * <p>
+ * Readers of byte arrays support lazy decoding, nested groups are skipped using their element
+ * counts and are decoded from the array on first access.
  *
  * @author Aaron Hansen
  */
@@ -24,24 +32,52 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private final ArrayInput array;
     private ByteBuffer byteBuf;
     private byte[] bytes;
     private CharBuffer charBuf;
+    private final CountingInput counter;
     private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
     private Frame frame;
     private final InputStream in;
+    private long tokenStart;
     private boolean wasValue = true;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Decodes the entire array, which will not be copied.
+     */
+    public MsgPackReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    /**
+     * Decodes a range of the array, which will not be copied.
+     *
+     * @param buf The encoded document.
+     * @param off The index of the first byte to decode.
+     * @param len The number of bytes to decode.
+     */
+    public MsgPackReader(byte[] buf, int off, int len) {
+        if ((off < 0) || (len < 0) || ((off + len) > buf.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.array = new ArrayInput(buf, off, len);
+        this.counter = null;
+        this.in = array;
+    }
+
     public MsgPackReader(File file) {
-        this.in = fis(file);
+        this(fis(file));
     }
 
     public MsgPackReader(InputStream in) {
-        this.in = in;
+        this.array = null;
+        this.counter = new CountingInput(in);
+        this.in = counter;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -57,31 +93,28 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         }
     }
 
+    /**
+     * The position of the first byte of the token last returned by next(), relative to the
+     * beginning of the input.
+     */
+    @Override
+    public long getOffset() {
+        return tokenStart;
+    }
+
     @Override
     public Token next() {
-        if (frame != null) {
-            //check to see if we've read all the children of the parent list/map.
-            if (frame.isMap) {
-                //don't count keys, only values
-                if (wasValue) {
-                    if (!frame.next()) {
-                        frame = frame.parent;
-                        setEndObj();
-                        return last();
-                    }
-                }
-                wasValue = !wasValue;
-            } else {
-                if (!frame.next()) {
-                    frame = frame.parent;
-                    setEndList();
-                    return last();
-                }
-            }
+        if (endFrame()) {
+            return last();
         }
         byte b;
         try {
-            b = (byte) in.read();
+            tokenStart = position();
+            int i = in.read();
+            if (i < 0) {
+                return setEndInput();
+            }
+            b = (byte) i;
             switch (b) {
                 case NULL:
                     return setNextNull();
@@ -143,16 +176,100 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         return this;
     }
 
+    /**
+     * Skips the group using the element counts of it and its descendants.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipChildren() {
+        Token ret = last();
+        if ((ret != Token.BEGIN_LIST) && (ret != Token.BEGIN_OBJ)) {
+            return ret;
+        }
+        boolean map = frame.isMap;
+        try {
+            skipValues(map ? frame.size * 2L : frame.size);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+        frame = frame.parent;
+        if (map) {
+            return setEndObj();
+        }
+        return setEndList();
+    }
+
+    /**
+     * Skips payloads by their lengths, strings and numbers are never decoded.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public Token skipValue() {
+        return skipNext(true);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Protected Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected Supplier<AbstractReader> lazyReader() {
+        if (array == null) {
+            return null;
+        }
+        int start = array.start + (int) tokenStart;
+        skipChildren();
+        byte[] buf = array.array();
+        int len = array.position() - start;
+        return () -> new MsgPackReader(buf, start, len);
+    }
+
+    @Override
+    protected Token skipScalar() {
+        return skipNext(false);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Private Methods
     ///////////////////////////////////////////////////////////////////////////
 
-    private InputStream fis(File file) {
-        try {
-            return new BufferedInputStream(new FileInputStream(file));
-        } catch (IOException x) {
-            throw new RuntimeException(x);
+    /**
+     * Counts the next child of the current list or map, and if there are none left, ends it.
+     *
+     * @return True if the list or map was ended.
+     */
+    private boolean endFrame() {
+        if (frame != null) {
+            //check to see if we've read all the children of the parent list/map.
+            if (frame.isMap) {
+                //don't count keys, only values
+                if (wasValue) {
+                    if (!frame.next()) {
+                        frame = frame.parent;
+                        setEndObj();
+                        return true;
+                    }
+                }
+                wasValue = !wasValue;
+            } else {
+                if (!frame.next()) {
+                    frame = frame.parent;
+                    setEndList();
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    private static InputStream fis(File file) {
+        InputStream in = MappedInput.open(file);
+        if (in instanceof MappedInput) {
+            return in;
+        }
+        return new BufferedInputStream(in);
     }
 
     /**
@@ -222,6 +339,16 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         return (b & (byte) 0xf0) == FIXMAP_PREFIX;
     }
 
+    /**
+     * The number of bytes consumed from the input.
+     */
+    private long position() {
+        if (array != null) {
+            return array.position() - array.start;
+        }
+        return counter.count;
+    }
+
     /**
      * Reads bytes into an array that is guaranteed to be at least the given size but will probably
      * be longer.
@@ -234,9 +361,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
             }
             bytes = new byte[tmp];
         }
-        if (in.read(bytes, 0, size) != size) {
-            throw new IOException("Unexpected end of input");
-        }
+        readFully(bytes, size);
         return bytes;
     }
 
@@ -247,7 +372,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
                 size = in.read() & 0xFF;
                 break;
             case BIN16:
-                size = readShort(in);
+                size = readU16(in);
                 break;
             case BIN32:
                 size = readInt(in);
@@ -256,7 +381,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
                 throw new IllegalStateException("Unknown bytes: " + b);
         }
         byte[] bytes = new byte[size];
-        in.read(bytes);
+        readFully(bytes, size);
         return setNext(bytes);
     }
 
@@ -271,7 +396,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
                 len = in.read();
                 break;
             case EXT16:
-                len = readShort(in);
+                len = readU16(in);
                 break;
             default: //case EXT32 :
                 len = readInt(in);
@@ -281,7 +406,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
             return setNext(new BigDecimal(readUTF(len)));
         }
         byte[] bytes = new byte[len];
-        in.read(bytes);
+        readFully(bytes, len);
         if (type == BIG_INTEGER_TYPE) {
             return setNext(new BigInteger(bytes));
         }
@@ -293,6 +418,22 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         return Float.intBitsToFloat(readInt(in));
     }
 
+    /**
+     * Reads exactly len bytes into the beginning of the array.
+     */
+    private void readFully(byte[] buf, int len) throws IOException {
+        //streams such as MappedInput can return fewer bytes than requested, and an exhausted
+        //lazy slice returns -1 even for an empty read, so read is never called with 0
+        int off = 0;
+        while (off < len) {
+            int count = in.read(buf, off, len - off);
+            if (count < 0) {
+                throw new IOException("Unexpected end of input");
+            }
+            off += count;
+        }
+    }
+
     private static int readInt(InputStream in) {
         try {
             return (((in.read() & 0xFF) << 24) |
@@ -311,7 +452,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         } else {
             switch (b) {
                 case LIST16:
-                    size = readShort(in);
+                    size = readU16(in);
                     break;
                 case LIST32:
                     size = readInt(in);
@@ -346,7 +487,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         } else {
             switch (b) {
                 case MAP16:
-                    size = readShort(in);
+                    size = readU16(in);
                     break;
                 case MAP32:
                     size = readInt(in);
@@ -399,7 +540,7 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
                     size = in.read() & 0xFF;
                     break;
                 case STR16:
-                    size = readShort(in);
+                    size = readU16(in);
                     break;
                 case STR32:
                     size = readInt(in);
@@ -433,6 +574,10 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
 
     private String readUTF(int len) throws IOException {
         byte[] bytes = readBytes(len);
+        SymbolTable symbols = nextSymbols();
+        if (symbols != null) {
+            return symbols.get(bytes, 0, len);
+        }
         ByteBuffer byteBuf = getByteBuffer(bytes, len);
         CharBuffer charBuf = getCharBuffer(len);
         decoder.decode(byteBuf, charBuf, false);
@@ -440,10 +585,210 @@ public class MsgPackReader extends AbstractReader implements MsgPack {
         return charBuf.toString();
     }
 
+    /**
+     * Advances past the next len bytes.
+     */
+    private void skip(long len) throws IOException {
+        while (len > 0) {
+            long count = in.skip(len);
+            if (count <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                count = 1;
+            }
+            len -= count;
+        }
+    }
+
+    /**
+     * Advances past the payload of a value whose type has been read, using the lengths rather
+     * than decoding it.
+     *
+     * @return The number of values contained by a list or map, which have not been skipped.
+     */
+    private long skipPayload(byte b) throws IOException {
+        switch (b) {
+            case NULL:
+            case FALSE:
+            case TRUE:
+                break;
+            case INT8:
+            case UINT8:
+                skip(1);
+                break;
+            case INT16:
+            case UINT16:
+                skip(2);
+                break;
+            case FLOAT32:
+            case INT32:
+            case UINT32:
+                skip(4);
+                break;
+            case FLOAT64:
+            case INT64:
+            case UINT64:
+                skip(8);
+                break;
+            case BIN8:
+            case STR8:
+                skip(in.read() & 0xFF);
+                break;
+            case BIN16:
+            case STR16:
+                skip(readU16(in));
+                break;
+            case BIN32:
+            case STR32:
+                skip(readU32(in));
+                break;
+            case EXT8:
+                skip((in.read() & 0xFF) + 1);
+                break;
+            case EXT16:
+                skip(readU16(in) + 1);
+                break;
+            case EXT32:
+                skip(readU32(in) + 1);
+                break;
+            case LIST16:
+                return readU16(in);
+            case LIST32:
+                return readU32(in);
+            case MAP16:
+                return readU16(in) * 2L;
+            case MAP32:
+                return readU32(in) * 2;
+            default:
+                if (isFixStr(b)) {
+                    skip(b & 0x1F);
+                } else if (isFixedList(b)) {
+                    return b & 0x0f;
+                } else if (isFixedMap(b)) {
+                    return (b & 0x0f) * 2;
+                } else if (!isFixInt(b)) {
+                    throw new IllegalStateException("Unknown type: " + b);
+                }
+        }
+        return 0;
+    }
+
+    /**
+     * Advances past the given number of values, including the contents of lists and maps.
+     */
+    /**
+     * Implements skipValue and skipScalar, scalars are skipped using their length prefixes.
+     *
+     * @param children Whether to skip the contents of a list or map, or leave it begun.
+     */
+    private Token skipNext(boolean children) {
+        if (endFrame()) {
+            return last();
+        }
+        try {
+            tokenStart = position();
+            int i = in.read();
+            if (i < 0) {
+                return setEndInput();
+            }
+            byte b = (byte) i;
+            if ((b == LIST16) || (b == LIST32) || isFixedList(b)) {
+                readList(b);
+                if (children) {
+                    skipChildren();
+                }
+                return Token.BEGIN_LIST;
+            }
+            if ((b == MAP16) || (b == MAP32) || isFixedMap(b)) {
+                readMap(b);
+                if (children) {
+                    skipChildren();
+                }
+                return Token.BEGIN_OBJ;
+            }
+            skipPayload(b);
+            return setNextNull();
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private void skipValues(long count) throws IOException {
+        while (count > 0) {
+            count--;
+            int i = in.read();
+            if (i < 0) {
+                throw new EOFException();
+            }
+            count += skipPayload((byte) i);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Inner Classes
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Exposes the position in the array, so that nested groups can be decoded lazily.
+     */
+    private static class ArrayInput extends ByteArrayInputStream {
+
+        final int start;
+
+        ArrayInput(byte[] buf, int off, int len) {
+            super(buf, off, len);
+            this.start = off;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int position() {
+            return pos;
+        }
+
+    }
+
+    /**
+     * Counts the bytes consumed from a stream, for getOffset().
+     */
+    private static class CountingInput extends FilterInputStream {
+
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ret = in.read();
+            if (ret >= 0) {
+                count++;
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int ret = in.read(b, off, len);
+            if (ret > 0) {
+                count += ret;
+            }
+            return ret;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long ret = in.skip(n);
+            count += ret;
+            return ret;
+        }
+
+    }
+
     private class Frame {
 
         final boolean isMap;
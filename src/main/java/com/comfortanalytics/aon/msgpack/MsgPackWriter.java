@@ -1,6 +1,8 @@
 package com.comfortanalytics.aon.msgpack;
 
 import com.comfortanalytics.aon.AbstractWriter;
+import com.comfortanalytics.aon.ByteBufferOutput;
+import com.comfortanalytics.aon.ChannelOutput;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -9,16 +11,32 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
 
 /**
  * MsgPack implementation of Awriter.
+ * <p>
+ * MsgPack encodes the number of elements at the start of lists and maps.  When the size is known,
+ * either by calling beginList(int)/beginObj(int) or by writing an Alist/Aobj with value(Adata),
+ * bytes are sent to the stream as they are produced.  Otherwise the encoding is held in memory
+ * until the size can be written, which is when the outermost unsized list or map is closed.
+ * <p>
+ * Container headers use the most compact form for the size: fixarray/fixmap, then 16 bit, then
+ * 32 bit.  Unsized containers reserve room for a 32 bit header which is compacted when closed.
  *
  * @author Aaron Hansen
  */
 public class MsgPackWriter extends AbstractWriter implements MsgPack {
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Class Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int SEND_SIZE = 8192;
+
     ///////////////////////////////////////////////////////////////////////////
     // Fields
     ///////////////////////////////////////////////////////////////////////////
@@ -28,12 +46,23 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
     private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
     private Frame frame;
     private final OutputStream out;
+    private int nextSize = -1;
     private ByteBuffer strBuffer;
+    private int unsized;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Encodes into the caller's buffers.
+     *
+     * @see ByteBufferOutput
+     */
+    public MsgPackWriter(ByteBuffer buf, UnaryOperator<ByteBuffer> onFull) {
+        this(new ByteBufferOutput(buf, onFull));
+    }
+
     public MsgPackWriter(File out) {
         this.out = fos(out);
     }
@@ -42,13 +71,63 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
         this.out = out;
     }
 
+    /**
+     * Writes straight to the channel.
+     */
+    public MsgPackWriter(WritableByteChannel out) {
+        this(new ChannelOutput(out));
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Public Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Start a list with a known number of elements, which allows it to be streamed rather than
+     * buffered.
+     *
+     * @param size The exact number of values that will be written before endList().
+     * @throws IllegalStateException when improperly called.
+     */
+    @Override
+    public MsgPackWriter beginList(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        nextSize = size;
+        try {
+            super.beginList();
+        } finally {
+            nextSize = -1;
+        }
+        return this;
+    }
+
+    /**
+     * Start a map with a known number of members, which allows it to be streamed rather than
+     * buffered.
+     *
+     * @param size The exact number of key value pairs that will be written before endObj().
+     * @throws IllegalStateException when improperly called.
+     */
+    @Override
+    public MsgPackWriter beginObj(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        nextSize = size;
+        try {
+            super.beginObj();
+        } finally {
+            nextSize = -1;
+        }
+        return this;
+    }
+
     @Override
     public void close() {
         try {
+            byteBuffer.sendTo(out);
             out.close();
         } catch (IOException x) {
             throw new RuntimeException(x);
@@ -58,18 +137,33 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
     @Override
     public void flush() {
         try {
+            if (unsized == 0) {
+                byteBuffer.sendTo(out);
+            }
             out.flush();
         } catch (IOException x) {
             throw new RuntimeException(x);
         }
     }
 
+    @Override
+    public MsgPackWriter reset() {
+        byteBuffer.clear();
+        frame = null;
+        nextSize = -1;
+        unsized = 0;
+        return (MsgPackWriter) super.reset();
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Protected Methods
     ///////////////////////////////////////////////////////////////////////////
 
     @Override
     protected void write(BigDecimal arg) {
+        if (frame != null) {
+            frame.increment();
+        }
         byte[] b = arg.toString().getBytes(StandardCharsets.UTF_8);
         int len = b.length;
         if (len < MAX8) {
@@ -90,6 +184,9 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
 
     @Override
     protected void write(BigInteger arg) {
+        if (frame != null) {
+            frame.increment();
+        }
         byte[] b = arg.toByteArray();
         int len = b.length;
         if (len < MAX8) {
@@ -217,49 +314,29 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
     }
 
     /**
-     * A negative size implies dynamic and will be written when the list is closed.
+     * If the size is unknown, a placeholder is written and replaced when the list is closed.
      */
     @Override
     protected void writeBeginList() {
-        if (frame != null) {
-            frame.increment();
-        }
-        this.frame = new Frame();
-        byteBuffer.put(LIST32);
-        frame.offset = byteBuffer.length();
-        byteBuffer.putInt(0);
+        writeBegin(false);
     }
 
     /**
-     * A negative size implies dynamic and will be written when the map is closed.
+     * If the size is unknown, a placeholder is written and replaced when the map is closed.
      */
     @Override
     protected void writeBeginObj() {
-        if (frame != null) {
-            frame.increment();
-        }
-        this.frame = new Frame();
-        byteBuffer.put(MAP32);
-        frame.offset = byteBuffer.length();
-        byteBuffer.putInt(0);
+        writeBegin(true);
     }
 
     @Override
     protected void writeEndList() {
-        frame.writeSize();
-        frame = frame.parent;
-        if (frame == null) {
-            byteBuffer.sendTo(out);
-        }
+        writeEnd();
     }
 
     @Override
     protected void writeEndObj() {
-        frame.writeSize();
-        frame = frame.parent;
-        if (frame == null) {
-            byteBuffer.sendTo(out);
-        }
+        writeEnd();
     }
 
     @Override
@@ -287,6 +364,16 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
     // Private Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Sends the encoding to the stream if nothing is waiting on a size and enough bytes have
+     * accumulated.
+     */
+    private void maybeSend() {
+        if ((unsized == 0) && (byteBuffer.length() >= SEND_SIZE)) {
+            byteBuffer.sendTo(out);
+        }
+    }
+
     private FileOutputStream fos(File f) {
         try {
             return new FileOutputStream(f);
@@ -346,6 +433,37 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
         return strBuffer;
     }
 
+    private void writeBegin(boolean map) {
+        if (frame != null) {
+            frame.increment();
+        }
+        frame = new Frame(nextSize, map);
+        if (nextSize < 0) {
+            unsized++;
+            frame.offset = byteBuffer.length();
+            byteBuffer.put(map ? MAP32 : LIST32);
+            byteBuffer.putInt(0);
+        } else if (nextSize < 16) {
+            byteBuffer.put((byte) ((map ? FIXMAP_PREFIX : FIXLIST_PREFIX) | nextSize));
+        } else if (nextSize < MAX16) {
+            byteBuffer.put(map ? MAP16 : LIST16);
+            byteBuffer.putU16(nextSize);
+        } else {
+            byteBuffer.put(map ? MAP32 : LIST32);
+            byteBuffer.putInt(nextSize);
+        }
+    }
+
+    private void writeEnd() {
+        frame.writeSize();
+        frame = frame.parent;
+        if (frame == null) {
+            byteBuffer.sendTo(out);
+        } else {
+            maybeSend();
+        }
+    }
+
     private void writeString(CharSequence arg) {
         if (arg.length() == 0) {
             byteBuffer.put(FIXSTR_PREFIX);
@@ -379,21 +497,50 @@ public class MsgPackWriter extends AbstractWriter implements MsgPack {
 
     class Frame {
 
+        final int expected;
+        final boolean map;
         int offset = -1;
         final Frame parent;
         int size = 0;
 
-        Frame() {
+        /**
+         * @param expected The number of elements that will be written, or -1 if unknown.
+         * @param map      Whether this is a map or list.
+         */
+        Frame(int expected, boolean map) {
+            this.expected = expected;
+            this.map = map;
             this.parent = frame;
         }
 
         void increment() {
-            size++;
+            if ((++size > expected) && (expected >= 0)) {
+                throw new IllegalStateException("Expecting only " + expected + " elements");
+            }
+            maybeSend();
         }
 
+        /**
+         * Replaces the placeholder header of an unsized container with the most compact header
+         * for the actual size, otherwise validates the expected size.
+         */
         void writeSize() {
             if (offset >= 0) {
-                byteBuffer.replaceInt(offset, size);
+                if (size < 16) {
+                    byte prefix = map ? FIXMAP_PREFIX : FIXLIST_PREFIX;
+                    byteBuffer.replace(offset, (byte) (prefix | size));
+                    byteBuffer.remove(offset + 1, 4);
+                } else if (size < MAX16) {
+                    byteBuffer.replace(offset, map ? MAP16 : LIST16);
+                    byteBuffer.replaceShort(offset + 1, (short) size);
+                    byteBuffer.remove(offset + 3, 2);
+                } else {
+                    byteBuffer.replaceInt(offset + 1, size);
+                }
+                unsized--;
+            } else if (size != expected) {
+                throw new IllegalStateException(
+                        "Expecting " + expected + " elements but " + size + " were written");
             }
         }
     }
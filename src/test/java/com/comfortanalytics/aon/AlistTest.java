@@ -23,6 +23,60 @@ public class AlistTest {
         Assertions.assertEquals(list1, list2);
     }
 
+    @Test
+    public void testTyped() {
+        Alist list = new Alist(Atype.DOUBLE).addAll(new double[]{1.5, 2.5}).add(3.5);
+        Assertions.assertEquals(Atype.DOUBLE, list.typedAs());
+        Assertions.assertEquals(3, list.size());
+        Assertions.assertEquals(2.5, list.getDouble(1));
+        Assertions.assertEquals(Adouble.valueOf(3.5), list.get(2));
+        Alist generic = new Alist().add(1.5).add(2.5).add(3.5);
+        Assertions.assertNull(generic.typedAs());
+        Assertions.assertEquals(generic, list);
+        Assertions.assertEquals(generic.hashCode(), list.hashCode());
+        Assertions.assertEquals(list, list.copy());
+        Assertions.assertEquals(Adouble.valueOf(1.5), list.remove(0));
+        Assertions.assertEquals(3.5, list.getDouble(1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> list.getDouble(2));
+        //a foreign type converts the list to generic
+        list.add("abc");
+        Assertions.assertNull(list.typedAs());
+        Assertions.assertEquals(new Alist().add(2.5).add(3.5).add("abc"), list);
+        Alist ints = new Alist().addAll(new int[]{1, 2, 3});
+        Assertions.assertEquals(Atype.INT, ints.typedAs());
+        ints.put(0, 10L);
+        Assertions.assertNull(ints.typedAs());
+        Assertions.assertEquals(10L, ints.getLong(0));
+        Assertions.assertEquals(2, ints.getInt(1));
+        Alist bools = new Alist(Atype.BOOLEAN);
+        for (int i = 0; i < 200; i++) {
+            bools.add((i % 3) == 0);
+        }
+        bools.remove(5);
+        Assertions.assertEquals(199, bools.size());
+        for (int i = 0; i < 199; i++) {
+            Assertions.assertEquals(((i < 5 ? i : i + 1) % 3) == 0, bools.getBoolean(i));
+        }
+    }
+
+    @Test
+    public void testTypedDecode() {
+        Alist list = new Alist()
+                .add(new Alist().addAll(new double[]{0.5, 1, 2}))
+                .add(new Alist().addAll(new int[]{1, 2, 3}))
+                .add(new Alist().add(1).add("a"));
+        Alist aon = Aon.readAon(Aon.aonBytes(list));
+        Assertions.assertEquals(list, aon);
+        Assertions.assertEquals(Atype.DOUBLE, aon.<Alist>get(0).typedAs());
+        Assertions.assertEquals(Atype.INT, aon.<Alist>get(1).typedAs());
+        Assertions.assertNull(aon.<Alist>get(2).typedAs());
+        Alist json = Aon.readJson(Aon.jsonBytes(list));
+        Assertions.assertEquals(list.toString(), json.toString());
+        Assertions.assertEquals(Atype.DOUBLE, json.<Alist>get(0).typedAs());
+        Assertions.assertEquals(Atype.LONG, json.<Alist>get(1).typedAs());
+        Assertions.assertEquals(list, Aon.readMsgPack(Aon.msgPackBytes(list)));
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Package Methods
     ///////////////////////////////////////////////////////////////////////////
@@ -1,5 +1,6 @@
 package com.comfortanalytics.aon;
 
+import java.util.Iterator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -23,8 +24,73 @@ public class AobjTest {
         Assertions.assertEquals(obj1, obj2);
     }
 
+    @Test
+    public void testHashThreshold() {
+        Aobj small = new Aobj();
+        Aobj large = new Aobj();
+        int count = Aobj.HASH_THRESHOLD * 3;
+        for (int i = 0; i < count; i++) {
+            large.put("k" + i, i);
+        }
+        //reverse order, equality ignores order
+        for (int i = count; --i >= 0; ) {
+            small.put("k" + i, i);
+            if (i == (count - Aobj.HASH_THRESHOLD)) {
+                Assertions.assertNotEquals(small, large);
+            }
+        }
+        Assertions.assertEquals(small, large);
+        Assertions.assertEquals(small.hashCode(), large.hashCode());
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i, large.get("k" + i, -1));
+            Assertions.assertSame(large.getMember("k" + i), large.getMember(new String("k" + i)));
+        }
+        for (int i = 0; i < count; i += 2) {
+            large.remove("k" + i);
+        }
+        Assertions.assertEquals(count / 2, large.size());
+        Assertions.assertEquals(-1, large.get("k0", -1));
+        Assertions.assertEquals(1, large.get("k1", -1));
+        large.clear();
+        large.put("a", 1);
+        Assertions.assertEquals(new Aobj().put("a", 1), large);
+    }
+
+    @Test
+    public void testRemove() {
+        Aobj obj = new Aobj();
+        for (int i = 0; i < 10; i++) {
+            obj.put("k" + i, i);
+        }
+        Assertions.assertEquals(0, obj.removeFirst().toInt());
+        Assertions.assertEquals(9, obj.removeLast().toInt());
+        Assertions.assertEquals(5, obj.remove("k5").toInt());
+        Assertions.assertNull(obj.remove("k5"));
+        //remove evens through the iterator
+        Iterator<Aobj.Member> it = obj.iterator();
+        while (it.hasNext()) {
+            if ((it.next().getValue().toInt() % 2) == 0) {
+                it.remove();
+            }
+        }
+        Assertions.assertThrows(IllegalStateException.class, it::remove);
+        validateOrder(obj, 1, 3, 7);
+        obj.remove("k3");
+        validateOrder(obj, 1, 7);
+        obj.put("k3", 3);
+        validateOrder(obj, 1, 7, 3);
+        Assertions.assertEquals(1, obj.removeFirst().toInt());
+        Assertions.assertEquals(3, obj.removeLast().toInt());
+        Assertions.assertEquals(7, obj.removeLast().toInt());
+        Assertions.assertNull(obj.getFirst());
+        Assertions.assertNull(obj.getLast());
+        Assertions.assertNull(obj.removeFirst());
+        obj.put("a", 1);
+        validateOrder(obj, 1);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
-    // Package Methods
+    // Package / Private Methods
     ///////////////////////////////////////////////////////////////////////////
 
     static Aobj makeObj() {
@@ -53,4 +119,15 @@ public class AobjTest {
                 .putNull("null");
     }
 
+    private void validateOrder(Aobj obj, int... values) {
+        Assertions.assertEquals(values.length, obj.size());
+        Aobj.Member m = obj.getFirst();
+        for (int value : values) {
+            Assertions.assertEquals(value, m.getValue().toInt());
+            m = m.next();
+        }
+        Assertions.assertNull(m);
+        Assertions.assertEquals(values[values.length - 1], obj.getLast().getValue().toInt());
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.comfortanalytics.aon;
 
+import com.comfortanalytics.aon.io.AonWriter;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -30,6 +32,28 @@ public class AstrTest {
         validateUnequal(list.get(0), val2);
     }
 
+    @Test
+    public void testUtf8() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("ascii \u00e9\u0800\uffff \ud83d\ude00 unpaired \ud800 \udc00");
+        for (int i = 0; i < 1000; i++) {
+            buf.append("\u00e9\ud83d\ude00");
+        }
+        String str = buf.toString();
+        //unpaired surrogates are encoded as '?', the same as String.getBytes
+        String expected = new String(str.getBytes(StandardCharsets.UTF_8),
+                                     StandardCharsets.UTF_8);
+        Alist list = new Alist().add(str).add("\ud800");
+        list = Aon.readAon(Aon.aonBytes(list)).toList();
+        Assertions.assertEquals(expected, list.getString(0));
+        Assertions.assertEquals("?", list.getString(1));
+        //keys can be any CharSequence
+        AonWriter out = new AonWriter();
+        out.beginObj().key(new StringBuilder("\u00e9key")).value(1).endObj();
+        Aobj obj = Aon.readAon(out.toByteArray());
+        Assertions.assertEquals(1, obj.get("\u00e9key", 0));
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Package / Private Methods
     ///////////////////////////////////////////////////////////////////////////
@@ -1,9 +1,39 @@
 package com.comfortanalytics.aon;
 
+import com.comfortanalytics.aon.io.AonConstants;
+import com.comfortanalytics.aon.io.AonReader;
+import com.comfortanalytics.aon.io.AonWriter;
+import com.comfortanalytics.aon.io.IndexedFile;
+import com.comfortanalytics.aon.io.IndexedFileWriter;
+import com.comfortanalytics.aon.json.JsonReader;
+import com.comfortanalytics.aon.json.JsonUtf8Reader;
+import com.comfortanalytics.aon.json.JsonWriter;
+import com.comfortanalytics.aon.msgpack.MsgPackReader;
+import com.comfortanalytics.aon.msgpack.MsgPackWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 
 public class SerializationTest {
 
@@ -16,6 +46,265 @@ public class SerializationTest {
         Assertions.assertEquals(largeObj, neu);
     }
 
+    @Test
+    public void testAonStream() {
+        byte[] buf = Aon.aonBytes(largeObj);
+        //small reads and a small window force frequent refills
+        InputStream in = new ByteArrayInputStream(buf) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        Aobj neu = new AonReader(in, 16).getObj();
+        Assertions.assertEquals(largeObj, neu);
+    }
+
+    @Test
+    public void testAonWriterBuffer() {
+        byte[] buf = Aon.aonBytes(largeObj);
+        //a tiny buffer forces many drains and large payloads to bypass it
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AonWriter(out, 16).value(largeObj);
+        Assertions.assertArrayEquals(buf, out.toByteArray());
+    }
+
+    @Test
+    public void testByteBufferOutput() {
+        Aobj orig = makeJsonObj().put("big", new byte[20000]);
+        byte[][] expected = new byte[][]{
+                Aon.aonBytes(orig), Aon.jsonBytes(orig), Aon.msgPackBytes(orig)};
+        for (int i = 0; i < expected.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteBuffer buf = ByteBuffer.allocateDirect(100);
+            UnaryOperator<ByteBuffer> onFull = full -> {
+                full.flip();
+                while (full.hasRemaining()) {
+                    out.write(full.get());
+                }
+                full.clear();
+                return full;
+            };
+            Awriter writer;
+            if (i == 0) {
+                writer = new AonWriter(buf, onFull);
+            } else if (i == 1) {
+                writer = new JsonWriter(buf, onFull);
+            } else {
+                writer = new MsgPackWriter(buf, onFull);
+            }
+            writer.value(orig).close();
+            Assertions.assertArrayEquals(expected[i], out.toByteArray());
+        }
+    }
+
+    @Test
+    public void testChannelOutput() throws Exception {
+        Aobj orig = makeJsonObj().put("big", new byte[20000]);
+        byte[][] expected = new byte[][]{
+                Aon.aonBytes(orig), Aon.jsonBytes(orig), Aon.msgPackBytes(orig)};
+        File file = File.createTempFile("aon", ".tmp");
+        try {
+            for (int i = 0; i < expected.length; i++) {
+                //a FileChannel supports gathering writes
+                FileChannel channel = FileChannel.open(file.toPath(),
+                                                       StandardOpenOption.WRITE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING);
+                //the stream channel does not
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                WritableByteChannel[] channels = {channel, Channels.newChannel(out)};
+                for (WritableByteChannel ch : channels) {
+                    Awriter writer;
+                    if (i == 0) {
+                        writer = new AonWriter(ch);
+                    } else if (i == 1) {
+                        writer = new JsonWriter(ch);
+                    } else {
+                        writer = new MsgPackWriter(ch);
+                    }
+                    writer.value(orig).close();
+                }
+                Assertions.assertArrayEquals(expected[i], Files.readAllBytes(file.toPath()));
+                Assertions.assertArrayEquals(expected[i], out.toByteArray());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testElements() {
+        Alist records = new Alist();
+        for (int i = 0; i < 1000; i++) {
+            records.add(new Aobj().put("id", i).put("tags", new Alist().add("t" + i)));
+        }
+        records.add(5).addNull();
+        Aobj orig = new Aobj()
+                .put("skip", largeObj)
+                .put("data", new Aobj().put("big", largeObj).put("records", records));
+        byte[] aon = Aon.aonBytes(orig);
+        byte[] json = Aon.jsonBytes(orig);
+        byte[] msgPack = Aon.msgPackBytes(orig);
+        Areader[] readers = new Areader[]{
+                new AonReader(new ByteArrayInputStream(aon)),
+                new JsonReader(new ByteArrayInputStream(json)),
+                new JsonUtf8Reader(json),
+                new MsgPackReader(new ByteArrayInputStream(msgPack))};
+        for (Areader reader : readers) {
+            Alist actual = new Alist();
+            Iterator<Adata> it = reader.elements("data", "records");
+            while (it.hasNext()) {
+                actual.add(it.next());
+            }
+            Assertions.assertEquals(records, actual);
+            Assertions.assertEquals(Areader.Token.END_LIST, reader.last());
+            Assertions.assertFalse(it.hasNext());
+            reader.close();
+        }
+        try (Stream<Adata> stream = Aon.stream(Aon.aonReader(Aon.aonBytes(records)))) {
+            Assertions.assertEquals(records.size(), stream.count());
+        }
+        Assertions.assertFalse(Aon.aonReader(aon).elements("data", "missing").hasNext());
+        Assertions.assertThrows(IllegalStateException.class,
+                                () -> Aon.aonReader(aon).elements("skip"));
+    }
+
+    @Test
+    public void testGroupLengths() {
+        Aobj orig = new Aobj().put("big", largeObj).put("x", 1);
+        AonWriter writer = new AonWriter().setGroupLengths(true);
+        writer.value(orig);
+        byte[] sized = writer.toByteArray();
+        Assertions.assertEquals(AonConstants.SIZED, sized[0]);
+        Assertions.assertEquals(orig, Aon.readAon(sized));
+        Assertions.assertEquals(orig, new AonReader(new ByteArrayInputStream(sized), 16).getObj());
+        Assertions.assertEquals(orig, Aon.readAonLazy(sized));
+        Assertions.assertEquals(new Aobj().put("x", 1), Aon.readAon(sized, new Projection("x")));
+        //a skipped group is not scanned, so damage inside it goes unnoticed
+        sized[sized.length - 5] = 0x01;
+        Areader[] readers = new Areader[]{
+                new AonReader(sized),
+                new AonReader(new ByteArrayInputStream(sized), 16)};
+        for (Areader reader : readers) {
+            Assertions.assertEquals(Areader.Token.BEGIN_OBJ, reader.next());
+            Assertions.assertEquals("big", readKey(reader));
+            Assertions.assertEquals(Areader.Token.BEGIN_OBJ, reader.skipValue());
+            Assertions.assertEquals("x", readKey(reader));
+            reader.next();
+            Assertions.assertEquals(1, reader.getInt());
+            Assertions.assertEquals(Areader.Token.END_OBJ, reader.next());
+        }
+        //streams and the key table
+        Alist list = new Alist();
+        for (int i = 0; i < 100; i++) {
+            list.add(new Aobj().put("a", largeObj.get("object").toObj()).put("b", i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new AonWriter(out, 64).setGroupLengths(true).setKeyTable(true);
+        writer.value(list);
+        writer.close();
+        byte[] both = out.toByteArray();
+        Assertions.assertEquals(list, Aon.readAon(both));
+        Alist projected = Aon.readAon(both, new Projection("[*].b"));
+        Assertions.assertEquals(99, projected.get(99).toObj().get("b", 0));
+        //cannot be changed inside a group, whether or not it is sized
+        AonWriter mid = new AonWriter();
+        mid.beginObj().key("a");
+        Assertions.assertThrows(IllegalStateException.class, () -> mid.setGroupLengths(true));
+        mid.value(largeObj).endObj().endRecord();
+        mid.setGroupLengths(true).value(orig);
+        RecordReader records = new RecordReader(new AonReader(mid.toByteArray()));
+        Assertions.assertEquals(new Aobj().put("a", largeObj), records.next());
+        Assertions.assertEquals(orig, records.next());
+    }
+
+    @Test
+    public void testKeyTable() throws Exception {
+        Alist list = new Alist();
+        for (int i = 0; i < 50; i++) {
+            Aobj wide = new Aobj();
+            for (int j = 0; j < 300; j++) {
+                wide.put("key" + j, j);
+            }
+            list.add(new Aobj()
+                             .put("a", new Aobj().put("x", i).put("y", "y"))
+                             .put("b", new Aobj().put("x", -i))
+                             .put("wide", wide));
+        }
+        byte[] plain = Aon.aonBytes(list);
+        AonWriter writer = new AonWriter().setKeyTable(true);
+        writer.value(list);
+        byte[] keyed = writer.toByteArray();
+        Assertions.assertTrue(keyed.length < plain.length / 2);
+        Assertions.assertEquals(list, Aon.readAon(keyed));
+        Assertions.assertEquals(list, Aon.readAon(new ByteArrayInputStream(keyed), true));
+        Assertions.assertEquals(list, new AonReader(new ByteArrayInputStream(keyed), 16).getList());
+        Assertions.assertEquals(list, Aon.readAonLazy(keyed));
+        //keys defined in skipped values are still registered
+        Alist projected = Aon.readAon(keyed, new Projection("[*].b"));
+        Assertions.assertEquals(50, projected.size());
+        Assertions.assertEquals(-7, projected.get(7).toObj().get("b").toObj().get("x", 0));
+        //keys resolve to the instance from their first occurrence
+        AonReader reader = new AonReader(keyed);
+        reader.setSymbolTable(null);
+        Alist decoded = reader.getList();
+        String first = decoded.get(0).toObj().get("wide").toObj().getFirst().getKey();
+        String last = decoded.get(49).toObj().get("wide").toObj().getFirst().getKey();
+        Assertions.assertSame(first, last);
+        //each record has its own table
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = Aon.aonWriter(out).setKeyTable(true);
+        for (int i = 0; i < 10; i++) {
+            writer.value(list.get(i).toObj()).endRecord();
+        }
+        writer.close();
+        List<Agroup> records = new ArrayList<>();
+        ParallelRecordReader.aon(out.toByteArray()).setChunkSize(100).forEach(records::add);
+        Assertions.assertEquals(10, records.size());
+        Assertions.assertEquals(list.get(9), records.get(9));
+    }
+
+    @Test
+    public void testIndexedFile() throws Exception {
+        File file = File.createTempFile("aon", ".idx");
+        try {
+            IndexedFileWriter writer = new IndexedFileWriter(file);
+            for (int i = 999; i >= 0; i--) {
+                writer.put("key" + i, new Aobj().put("i", i).put("s", "value" + i));
+            }
+            writer.put("large", largeObj);
+            writer.put("list", new Alist().add(new Aobj().put("a", 1).put("b", 2)));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                                    () -> writer.put("key1", new Aobj()));
+            writer.close();
+            //a small window so some documents span regions
+            for (IndexedFile opened : new IndexedFile[]{new IndexedFile(file),
+                                                       new IndexedFile(file, 4096)}) {
+                try (IndexedFile idx = opened) {
+                    Assertions.assertEquals(1002, idx.size());
+                    Assertions.assertEquals("key0", idx.getKey(0));
+                    Aobj obj = idx.get("key123");
+                    Assertions.assertEquals(123, obj.get("i", 0));
+                    Assertions.assertEquals("value123", obj.getString("s"));
+                    Assertions.assertEquals(largeObj, idx.get("large"));
+                    Assertions.assertNull(idx.get("missing"));
+                    Assertions.assertFalse(idx.containsKey("missing"));
+                    Assertions.assertEquals(new Aobj().put("s", "value7"),
+                                            idx.get("key7", new Projection("s")));
+                    Alist list = idx.get("list", new Projection("[*].b"));
+                    Assertions.assertEquals(new Alist().add(new Aobj().put("b", 2)), list);
+                    AonReader reader = idx.getReader("key5");
+                    Assertions.assertEquals(Areader.Token.BEGIN_OBJ, reader.next());
+                    Assertions.assertEquals("i", readKey(reader));
+                }
+            }
+            Files.write(file.toPath(), new byte[100]);
+            Assertions.assertThrows(IllegalStateException.class, () -> new IndexedFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testJson() {
         Aobj orig = makeJsonObj();
@@ -24,6 +313,193 @@ public class SerializationTest {
         Assertions.assertEquals(orig, neu);
     }
 
+    @Test
+    public void testJsonDoubles() {
+        Alist list = new Alist()
+                .add(0.1d).add(1e23d).add(-4.9e-324d).add(1e20d).add(100d).add(0.1f)
+                .add(Double.POSITIVE_INFINITY).add(Long.MIN_VALUE);
+        Assertions.assertEquals(
+                "[0.1,1.0E23,-4.9E-324,1.0E20,100.0,0.1,null,-9223372036854775808]",
+                list.toString());
+        Random random = new Random(0);
+        list = new Alist();
+        for (int i = 0; i < 1000; i++) {
+            list.add(Double.longBitsToDouble(random.nextLong()));
+            list.add(random.nextDouble() * 1000);
+            list.add(random.nextFloat());
+        }
+        Alist neu = Aon.readJson(Aon.jsonBytes(list));
+        for (int i = 0; i < list.size(); i++) {
+            Adata orig = list.get(i);
+            if (orig.isFloat()) {
+                Assertions.assertEquals(orig.toFloat(), (float) neu.get(i).toDouble());
+            } else if (!Double.isNaN(orig.toDouble()) && !Double.isInfinite(orig.toDouble())) {
+                Assertions.assertEquals(orig.toDouble(), neu.get(i).toDouble());
+            }
+        }
+    }
+
+    @Test
+    public void testJsonNumbers() {
+        String[] doubles = {
+                "0.1", "-1.5E-3", "1e+5", "1.7976931348623157e308", "2.2250738585072014E-308",
+                "4.9e-324", "1e-400", "1e400", "9007199254740993.0", "0.30000000000000004",
+                "123456789012345678901234567890.5",
+                "1.00000000000000011102230246251565404236316680908203125"};
+        StringBuilder buf = new StringBuilder("[");
+        for (String str : doubles) {
+            buf.append(str).append(',');
+        }
+        buf.append("9223372036854775807,-9223372036854775808,9223372036854775808]");
+        Alist list = Aon.readJson(buf.toString().getBytes());
+        Assertions.assertEquals(list, Aon.readJson(buf.toString()));
+        for (int i = 0; i < doubles.length; i++) {
+            Assertions.assertEquals(Double.parseDouble(doubles[i]), list.get(i).toDouble());
+        }
+        int i = doubles.length;
+        Assertions.assertEquals(Long.MAX_VALUE, list.get(i++).toLong());
+        Assertions.assertEquals(Long.MIN_VALUE, list.get(i++).toLong());
+        Assertions.assertEquals(new BigInteger("9223372036854775808"), list.get(i).toBigInt());
+    }
+
+    @Test
+    public void testJsonUtf8() {
+        Aobj orig = makeJsonObj();
+        orig.put("\u00e9key", "caf\u00e9 \u0800\uffff \ud83d\ude00 \\ \"/\" \t");
+        byte[] buf = Aon.jsonBytes(orig);
+        Aobj neu = Aon.readJson(buf);
+        Assertions.assertEquals(orig, neu);
+        //small reads and a small window split strings and multi-byte chars across refills
+        InputStream in = new ByteArrayInputStream(buf) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        neu = new JsonUtf8Reader(in, 16).getObj();
+        Assertions.assertEquals(orig, neu);
+        //malformed input is replaced the same as the char based reader
+        buf = new byte[]{'[', '"', 'a', (byte) 0xC3, '"', ',', '"', '\\', 'n',
+                (byte) 0xE2, (byte) 0x82, '"', ']'};
+        Alist expected = new JsonReader(new ByteArrayInputStream(buf)).getList();
+        Assertions.assertEquals(expected, Aon.readJson(buf));
+        Assertions.assertEquals(expected, new JsonUtf8Reader(new ByteArrayInputStream(buf))
+                .getList());
+        //overlong encodings and surrogates, split across refills at every offset
+        int[][] seqs = new int[][]{{0xC0, 0x80}, {0xE0, 0x80, 0x80}, {0xED, 0xA0, 0x80},
+                {0xF0, 0x80, 0x80, 0x80}, {0xF4, 0x90, 0x80, 0x80}, {0xF5, 0x80}};
+        for (int[] seq : seqs) {
+            for (int pad = 0; pad < 16; pad++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (int i = 0; i < pad; i++) {
+                    out.write('x');
+                }
+                for (int b : seq) {
+                    out.write(b);
+                }
+                out.write('y');
+                byte[] str = out.toByteArray();
+                out.reset();
+                out.write('"');
+                out.write(str, 0, str.length);
+                out.write('"');
+                JsonUtf8Reader reader = new JsonUtf8Reader(
+                        new ByteArrayInputStream(out.toByteArray()), 16);
+                reader.next();
+                Assertions.assertEquals(new String(str, StandardCharsets.UTF_8),
+                                        reader.getString());
+            }
+        }
+    }
+
+    @Test
+    public void testLazy() {
+        Aobj orig = new Aobj()
+                .put("header", new Aobj().put("route", "a").put("id", 5))
+                .put("body", largeObj.copy())
+                .put("list", AlistTest.makeList().add(new Alist().add(new Aobj().put("a", 1))))
+                .put("text", "abc");
+        byte[][] bufs = new byte[][]{Aon.aonBytes(orig), Aon.msgPackBytes(orig)};
+        for (byte[] buf : bufs) {
+            boolean aon = buf == bufs[0];
+            Aobj lazy = aon ? Aon.readAonLazy(buf) : Aon.readMsgPackLazy(buf);
+            Assertions.assertEquals("abc", lazy.getString("text"));
+            Assertions.assertEquals(5, lazy.<Aobj>get("header").get("id", 0));
+            Aobj body = lazy.get("body");
+            Aobj copy = body.copy();
+            body.put("extra", true);
+            body.remove("extra");
+            copy.put("extra", true);
+            Assertions.assertEquals(largeObj, body);
+            Assertions.assertNotEquals(largeObj, copy);
+            Assertions.assertEquals(orig, lazy);
+            Assertions.assertEquals(orig.hashCode(), lazy.hashCode());
+            //the bytes are never modified, so a second read is independent
+            Aobj again = aon ? Aon.readAonLazy(buf) : Aon.readMsgPackLazy(buf);
+            again.<Alist>get("list").clear();
+            Assertions.assertEquals(orig, aon ? Aon.readAonLazy(buf) : Aon.readMsgPackLazy(buf));
+            Assertions.assertArrayEquals(buf, aon ? Aon.aonBytes(lazy) : Aon.msgPackBytes(lazy));
+        }
+        //an empty string that ends a lazy group
+        orig = new Aobj().put("a", new Aobj().put("b", "")).put("c", 1);
+        Aobj lazy = Aon.readMsgPackLazy(Aon.msgPackBytes(orig));
+        Assertions.assertEquals(new Aobj().put("b", ""), lazy.get("a"));
+        Assertions.assertEquals(orig, lazy);
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        Alist orig = new Alist();
+        for (int i = 0; i < 50000; i++) {
+            orig.add(new Aobj().put("id", i).put("name", "name" + i).put("dbl", i * 1.5));
+        }
+        File file = File.createTempFile("aon", ".tmp");
+        try {
+            Aon.writeAon(orig, file);
+            Assertions.assertTrue(file.length() >= MappedInput.MAP_THRESHOLD);
+            Assertions.assertEquals(orig, Aon.readAon(file));
+            //small windows to exercise remapping
+            try (MappedInput in = new MappedInput(file, 1000)) {
+                Assertions.assertEquals(orig, Aon.readAon(in, false));
+            }
+            try (MappedInput in = new MappedInput(file, 1000)) {
+                Assertions.assertEquals(file.length() - 10, in.skip(file.length() - 10));
+                Assertions.assertEquals(10, in.available());
+                Assertions.assertEquals(10, in.read(new byte[100], 0, 100));
+                Assertions.assertEquals(-1, in.read());
+            }
+            Aon.writeJson(orig, file);
+            Assertions.assertTrue(file.length() >= MappedInput.MAP_THRESHOLD);
+            Assertions.assertEquals(orig, Aon.readJson(file, StandardCharsets.UTF_8));
+            //the json is ascii, so this exercises the char reader
+            Assertions.assertEquals(orig, Aon.readJson(file, StandardCharsets.ISO_8859_1));
+            Aon.writeMsgPack(orig, file);
+            Assertions.assertTrue(file.length() >= MappedInput.MAP_THRESHOLD);
+            Assertions.assertEquals(orig, Aon.readMsgPack(file));
+            //strings, binaries and big integers (ext) that span window boundaries
+            char[] chars = new char[1000];
+            Arrays.fill(chars, 'x');
+            Random random = new Random(1);
+            Alist spans = new Alist();
+            for (int i = 0; i < 20; i++) {
+                byte[] bytes = new byte[10000];
+                random.nextBytes(bytes);
+                spans.add(i + new String(chars))
+                     .add(bytes)
+                     .add(new BigInteger(80000, random));
+            }
+            Aon.writeMsgPack(spans, file);
+            try (MappedInput in = new MappedInput(file, 4096)) {
+                Assertions.assertEquals(spans, new MsgPackReader(in).getList());
+            }
+            ByteBuffer direct = ByteBuffer.allocateDirect(100).put(Aon.msgPackBytes(orig.get(5)));
+            direct.flip();
+            Assertions.assertEquals(orig.get(5), Aon.msgPackReader(direct).getValue());
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testMsgPack() {
         Aobj orig = Profiling.makeLargeObj();
@@ -32,6 +508,436 @@ public class SerializationTest {
         Assertions.assertEquals(orig, neu);
     }
 
+    @Test
+    public void testMsgPackHeaders() {
+        //the example from the readme, same as other msgpack encoders
+        Aobj obj = new Aobj().put("name", "aon").put("born", 20180602).put("cool", true);
+        byte[] bytes = Aon.msgPackBytes(obj);
+        Assertions.assertEquals(26, bytes.length);
+        Assertions.assertEquals(0x83, bytes[0] & 0xFF);
+        //unsized containers are compacted when closed
+        for (int size : new int[]{0, 15, 16, 65535, 65536}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MsgPackWriter writer = new MsgPackWriter(out);
+            Alist list = new Alist();
+            writer.beginList();
+            for (int i = 0; i < size; i++) {
+                writer.value(i);
+                list.add(i);
+            }
+            writer.endList();
+            Assertions.assertArrayEquals(Aon.msgPackBytes(list), out.toByteArray());
+            Assertions.assertEquals(list, Aon.readMsgPack(out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testMsgPackStreaming() {
+        Alist orig = new Alist();
+        for (int i = 0; i < 10000; i++) {
+            orig.add(new Aobj().put("id", i).put("name", "name" + i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MsgPackWriter writer = new MsgPackWriter(out);
+        writer.beginList(orig.size());
+        for (Adata rec : orig) {
+            writer.value(rec);
+        }
+        //sized containers are sent before the document is complete
+        Assertions.assertTrue(out.size() > 0);
+        writer.endList();
+        Assertions.assertArrayEquals(Aon.msgPackBytes(orig), out.toByteArray());
+        Assertions.assertEquals(orig, Aon.readMsgPack(out.toByteArray()));
+    }
+
+    @Test
+    public void testPacked() {
+        Alist doubles = new Alist(Atype.DOUBLE);
+        Alist bools = new Alist();
+        Alist bytes = new Alist();
+        Alist shorts = new Alist();
+        Alist ints = new Alist(Atype.INT);
+        Alist longs = new Alist(Atype.LONG);
+        Alist floats = new Alist();
+        for (int i = 0; i < 1003; i++) {
+            doubles.add(Math.sin(i));
+            bools.add((i % 3) == 0);
+            bytes.add(i % 100 - 50);
+            shorts.add(i * 10 - 5000);
+            ints.add(i * 100000);
+            longs.add((long) i).add((long) i << 40);
+            floats.add(i / 3f);
+        }
+        Alist mixed = new Alist().add(1).add(2).add(3).add(4).add(5).add(6).add(7).add(8.0);
+        Aobj orig = new Aobj()
+                .put("doubles", doubles)
+                .put("bools", bools)
+                .put("bytes", bytes)
+                .put("shorts", shorts)
+                .put("ints", ints)
+                .put("longs", longs)
+                .put("floats", floats)
+                .put("short", new Alist().add(1).add(2))
+                .put("mixed", mixed);
+        byte[] aon = Aon.aonBytes(orig);
+        Assertions.assertTrue(Aon.aonBytes(new Alist().add(doubles)).length < 1003 * 8 + 16);
+        Assertions.assertTrue(Aon.aonBytes(new Alist().add(bools)).length < 1003 / 8 + 16);
+        Assertions.assertTrue(Aon.aonBytes(new Alist().add(shorts)).length < 1003 * 2 + 16);
+        Aobj decoded = Aon.readAon(aon);
+        Assertions.assertEquals(orig, decoded);
+        Assertions.assertEquals(Atype.DOUBLE, decoded.get("doubles").toList().typedAs());
+        Assertions.assertEquals(Atype.BOOLEAN, decoded.get("bools").toList().typedAs());
+        Assertions.assertEquals(Atype.INT, decoded.get("shorts").toList().typedAs());
+        Assertions.assertEquals(Atype.LONG, decoded.get("longs").toList().typedAs());
+        Assertions.assertEquals(Atype.FLOAT, decoded.get("floats").toList().typedAs());
+        Assertions.assertEquals(orig, new AonReader(new ByteArrayInputStream(aon), 16).getObj());
+        Assertions.assertEquals(orig, Aon.readAonLazy(aon));
+        Aobj projected = Aon.readAon(aon, new Projection("floats", "mixed"));
+        Assertions.assertEquals(new Aobj().put("floats", floats).put("mixed", mixed), projected);
+        //token by token
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = Aon.jsonWriter(out);
+        Aon.transcode(Aon.aonReader(aon), json);
+        json.close();
+        Assertions.assertArrayEquals(Aon.jsonBytes(orig), out.toByteArray());
+        AonReader reader = new AonReader(new ByteArrayInputStream(aon), 16);
+        reader.next();
+        Assertions.assertEquals("doubles", readKey(reader));
+        reader.skipValue();
+        Assertions.assertEquals("bools", readKey(reader));
+        Assertions.assertEquals(Areader.Token.BEGIN_LIST, reader.next());
+        for (int i = 0; i < 1003; i++) {
+            if ((i % 2) == 0) {
+                Assertions.assertEquals(Areader.Token.BOOLEAN, reader.next());
+                Assertions.assertEquals((i % 3) == 0, reader.getBoolean());
+            } else {
+                reader.skipValue();
+            }
+        }
+        Assertions.assertEquals(Areader.Token.END_LIST, reader.next());
+        Assertions.assertEquals("bytes", readKey(reader));
+        reader.next();
+        Assertions.assertEquals(bytes, reader.getValue());
+    }
+
+    @Test
+    public void testParallelRecords() throws Exception {
+        Alist records = new Alist();
+        for (int i = 0; i < 5000; i++) {
+            records.add(new Aobj().put("id", i).put("msg", "message " + i));
+        }
+        ByteArrayOutputStream aonOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream jsonOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream msgPackOut = new ByteArrayOutputStream();
+        RecordWriter[] writers = new RecordWriter[]{
+                new RecordWriter(Aon.aonWriter(aonOut)),
+                new RecordWriter(Aon.jsonWriter(jsonOut)),
+                new RecordWriter(Aon.msgPackWriter(msgPackOut))};
+        for (RecordWriter writer : writers) {
+            for (Adata rec : records) {
+                writer.write(rec.toGroup());
+            }
+            writer.close();
+        }
+        byte[] json = jsonOut.toByteArray();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ParallelRecordReader[] readers = new ParallelRecordReader[]{
+                    ParallelRecordReader.aon(aonOut.toByteArray()),
+                    ParallelRecordReader.json(json),
+                    ParallelRecordReader.json(new ByteArrayInputStream(json)),
+                    ParallelRecordReader.msgPack(msgPackOut.toByteArray()),
+                    ParallelRecordReader.json(json).setExecutor(executor).setOrdered(false),
+                    ParallelRecordReader.json(new ByteArrayInputStream(json))
+                                        .setExecutor(executor)
+                                        .setOrdered(false)};
+            for (int i = 0; i < readers.length; i++) {
+                Alist actual = new Alist();
+                readers[i].setChunkSize(1000).forEach(actual::add);
+                Assertions.assertEquals(records.size(), actual.size(), "Reader " + i);
+                if (i < 4) {
+                    Assertions.assertEquals(records, actual, "Reader " + i);
+                } else {
+                    boolean[] seen = new boolean[records.size()];
+                    for (Adata rec : actual) {
+                        seen[((Aobj) rec).get("id", -1)] = true;
+                    }
+                    for (boolean b : seen) {
+                        Assertions.assertTrue(b, "Reader " + i);
+                    }
+                }
+            }
+            //mapped files and direct buffers
+            byte[][] encoded = new byte[][]{aonOut.toByteArray(), json, msgPackOut.toByteArray()};
+            File file = File.createTempFile("aon", ".tmp");
+            try {
+                for (int i = 0; i < encoded.length; i++) {
+                    Files.write(file.toPath(), encoded[i]);
+                    ByteBuffer direct = ByteBuffer.allocateDirect(encoded[i].length + 1);
+                    direct.put((byte) 0).put(encoded[i]);
+                    direct.flip();
+                    direct.get();
+                    ParallelRecordReader[] mapped;
+                    if (i == 0) {
+                        mapped = new ParallelRecordReader[]{
+                                ParallelRecordReader.aon(file),
+                                ParallelRecordReader.aon(direct)};
+                    } else if (i == 1) {
+                        mapped = new ParallelRecordReader[]{
+                                ParallelRecordReader.json(file),
+                                ParallelRecordReader.json(direct)};
+                    } else {
+                        mapped = new ParallelRecordReader[]{
+                                ParallelRecordReader.msgPack(file),
+                                ParallelRecordReader.msgPack(direct)};
+                    }
+                    for (ParallelRecordReader reader : mapped) {
+                        Alist actual = new Alist();
+                        reader.setChunkSize(1000).setExecutor(executor).forEach(actual::add);
+                        Assertions.assertEquals(records, actual, "Format " + i);
+                    }
+                }
+            } finally {
+                file.delete();
+            }
+            //errors in a chunk reach the caller
+            byte[] bad = Arrays.copyOf(json, json.length);
+            int idx = bad.length / 2;
+            while (bad[idx - 1] != '\n') {
+                idx++;
+            }
+            bad[idx] = '7'; //a record must be a list or object
+            Assertions.assertThrows(RuntimeException.class, () -> ParallelRecordReader
+                    .json(bad).setChunkSize(1000).setExecutor(executor).forEach(rec -> {
+                    }));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testProjection() {
+        Aobj orig = new Aobj()
+                .put("a", new Aobj().put("b", 1).put("c", largeObj))
+                .put("big", largeObj)
+                .put("items", new Alist()
+                        .add(new Aobj().put("id", 1).put("x", "y"))
+                        .add(5)
+                        .add(new Aobj().put("x", new Alist().add(3)).put("id", "two"))
+                        .add(new Aobj()))
+                .put("str", "d");
+        Aobj expected = new Aobj()
+                .put("a", new Aobj().put("b", 1))
+                .put("items", new Alist()
+                        .add(new Aobj().put("id", 1))
+                        .add(new Aobj().put("id", "two"))
+                        .add(new Aobj()))
+                .put("str", "d");
+        Projection projection = new Projection("a.b", "items[*].id", "missing.key", "str");
+        Assertions.assertEquals(expected, Aon.readAon(Aon.aonBytes(orig), projection));
+        Assertions.assertEquals(expected, Aon.readJson(Aon.jsonBytes(orig), projection));
+        Assertions.assertEquals(expected, Aon.readMsgPack(Aon.msgPackBytes(orig), projection));
+        Assertions.assertEquals(orig, Aon.readAon(Aon.aonBytes(orig), null));
+        projection = new Projection("big");
+        Assertions.assertEquals(new Aobj().put("big", largeObj),
+                                Aon.readAon(Aon.aonBytes(orig), projection));
+        Alist list = orig.get("items");
+        Alist ids = new Alist().add(new Aobj().put("id", 1)).add(new Aobj().put("id", "two"))
+                               .add(new Aobj());
+        projection = new Projection("[*].id");
+        Assertions.assertEquals(ids, Aon.readAon(Aon.aonBytes(list), projection));
+        Assertions.assertEquals(ids, Aon.readJson(Aon.jsonBytes(list), projection));
+        Assertions.assertEquals(ids, Aon.readMsgPack(Aon.msgPackBytes(list), projection));
+        //unselected scalar elements are skipped, not decoded, so damage to them goes unnoticed
+        byte[] json = "[{\"id\":1},nul,{\"id\":2},tru]".getBytes(StandardCharsets.UTF_8);
+        ids = new Alist().add(new Aobj().put("id", 1)).add(new Aobj().put("id", 2));
+        Assertions.assertEquals(ids, Aon.readJson(json, projection));
+        Assertions.assertEquals(ids, new JsonReader(new ByteArrayInputStream(json))
+                .getList(projection));
+        for (String path : new String[]{"", "a..b", ".a", "a.", "a[0]", "a[*]b"}) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new Projection(path));
+        }
+    }
+
+    @Test
+    public void testRecords() {
+        Alist records = new Alist();
+        for (int i = 0; i < 500; i++) {
+            records.add(new Aobj().put("id", i).put("msg", "message " + i));
+        }
+        records.add(new Alist().add(1).add("two"));
+        records.add(makeJsonObj());
+        ByteArrayOutputStream aonOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream jsonOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream msgPackOut = new ByteArrayOutputStream();
+        RecordWriter[] writers = new RecordWriter[]{
+                new RecordWriter(Aon.aonWriter(aonOut)),
+                new RecordWriter(Aon.jsonWriter(jsonOut)).setFlushInterval(100),
+                new RecordWriter(Aon.msgPackWriter(msgPackOut)).setFlushInterval(1)};
+        for (RecordWriter writer : writers) {
+            for (Adata rec : records) {
+                writer.write(rec.toGroup());
+            }
+            Assertions.assertEquals(records.size(), writer.getCount());
+        }
+        //periodic flushes reach the stream before close
+        Assertions.assertTrue(jsonOut.size() > 0);
+        Assertions.assertTrue(msgPackOut.size() > 0);
+        for (RecordWriter writer : writers) {
+            writer.close();
+        }
+        byte[] aon = aonOut.toByteArray();
+        byte[] json = jsonOut.toByteArray();
+        byte[] msgPack = msgPackOut.toByteArray();
+        Assertions.assertEquals(records.size(), new String(json).split("\n").length);
+        Areader[] readers = new Areader[]{
+                new AonReader(aon),
+                new AonReader(new ByteArrayInputStream(aon), 16),
+                new JsonReader(new ByteArrayInputStream(json)),
+                new JsonUtf8Reader(json),
+                new JsonUtf8Reader(new ByteArrayInputStream(json), 16),
+                new MsgPackReader(msgPack),
+                new MsgPackReader(new ByteArrayInputStream(msgPack))};
+        byte[][] inputs = new byte[][]{aon, aon, json, json, json, msgPack, msgPack};
+        for (int i = 0; i < readers.length; i++) {
+            byte[] input = inputs[i];
+            try (RecordReader reader = new RecordReader(readers[i])) {
+                int idx = 0;
+                while (reader.hasNext()) {
+                    Agroup rec = reader.next();
+                    Assertions.assertEquals(records.get(idx), rec, "Reader " + i);
+                    //re-read from the offset, char offsets are byte offsets since the json is ascii
+                    int off = (int) reader.getOffset();
+                    Areader again;
+                    if (input == aon) {
+                        again = new AonReader(input, off, input.length - off);
+                    } else if (input == json) {
+                        again = new JsonUtf8Reader(input, off, input.length - off);
+                    } else {
+                        again = new MsgPackReader(input, off, input.length - off);
+                    }
+                    Assertions.assertEquals(rec, again.getValue());
+                    idx++;
+                }
+                Assertions.assertEquals(records.size(), reader.getCount());
+                Assertions.assertEquals(-1, reader.getOffset());
+            }
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        Aobj orig = new Aobj()
+                .put("a", 1)
+                .put("big", largeObj)
+                .put("str", "a \"quoted\" [string] {with} \\ brackets")
+                .put("list", AlistTest.makeList().add(new Alist().add(new Aobj())))
+                .put("num", -1.5e-7)
+                .put("b", "x");
+        byte[] aon = Aon.aonBytes(orig);
+        byte[] json = Aon.jsonBytes(orig);
+        byte[] msgPack = Aon.msgPackBytes(orig);
+        Areader[] readers = skipReaders(aon, json, msgPack);
+        Areader[] decoders = skipReaders(aon, json, msgPack);
+        for (int i = 0; i < readers.length; i++) {
+            Areader reader = readers[i];
+            //the offsets of the skipped values, found by decoding them
+            Areader decoder = decoders[i];
+            decoder.next();
+            readKey(decoder);
+            decoder.next();
+            readKey(decoder);
+            decoder.next();
+            long bigOffset = decoder.getOffset();
+            decoder.skipChildren();
+            readKey(decoder);
+            decoder.next();
+            long strOffset = decoder.getOffset();
+            decoder.close();
+            Assertions.assertEquals(Areader.Token.BEGIN_OBJ, reader.next());
+            Assertions.assertEquals("a", readKey(reader));
+            reader.next();
+            Assertions.assertEquals(1, reader.getValue().toInt());
+            Assertions.assertEquals("big", readKey(reader));
+            Assertions.assertEquals(Areader.Token.BEGIN_OBJ, reader.skipValue());
+            Assertions.assertEquals(Areader.Token.END_OBJ, reader.last());
+            Assertions.assertEquals(bigOffset, reader.getOffset(), "Reader " + i);
+            Assertions.assertEquals("str", readKey(reader));
+            reader.skipValue();
+            Assertions.assertEquals(strOffset, reader.getOffset(), "Reader " + i);
+            Assertions.assertEquals("list", readKey(reader));
+            Assertions.assertEquals(Areader.Token.BEGIN_LIST, reader.next());
+            Assertions.assertEquals(Areader.Token.BOOLEAN, reader.next());
+            Assertions.assertEquals(Areader.Token.BOOLEAN, reader.skipChildren());
+            Areader.Token skipped = reader.skipValue();
+            while (skipped != Areader.Token.END_LIST) {
+                skipped = reader.skipValue();
+            }
+            Assertions.assertEquals("num", readKey(reader));
+            reader.skipValue();
+            Assertions.assertEquals("b", readKey(reader));
+            reader.next();
+            Assertions.assertEquals("x", reader.getString());
+            Assertions.assertEquals(Areader.Token.END_OBJ, reader.skipValue());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testTranscode() {
+        Aobj orig = makeJsonObj().put("list", AlistTest.makeList().add(new Alist()));
+        //aon to json
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = Aon.jsonWriter(out);
+        Assertions.assertTrue(Aon.transcode(Aon.aonReader(Aon.aonBytes(orig)), json));
+        json.close();
+        Assertions.assertArrayEquals(Aon.jsonBytes(orig), out.toByteArray());
+        //pretty json
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        json = Aon.jsonWriter(expected);
+        json.setPrettyPrint(true);
+        json.value(orig).close();
+        out.reset();
+        json = Aon.jsonWriter(out);
+        json.setPrettyPrint(true);
+        Aon.transcode(Aon.aonReader(Aon.aonBytes(orig)), json);
+        json.close();
+        Assertions.assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        //json to msgpack
+        out.reset();
+        MsgPackWriter msgPack = Aon.msgPackWriter(out);
+        Aon.transcode(Aon.jsonReader(Aon.jsonBytes(orig)), msgPack);
+        msgPack.close();
+        Assertions.assertEquals(Aon.readJson(Aon.jsonBytes(orig)),
+                                Aon.readMsgPack(out.toByteArray()));
+        //msgpack to aon, every type
+        out.reset();
+        AonWriter aon = Aon.aonWriter(out);
+        Aon.transcode(Aon.msgPackReader(Aon.msgPackBytes(largeObj)), aon);
+        aon.close();
+        Assertions.assertEquals(largeObj, Aon.readAon(out.toByteArray()));
+        //a stream of records
+        Alist list = new Alist().add(1).add(new Aobj().put("a", "b"));
+        out.reset();
+        aon = Aon.aonWriter(out);
+        aon.value(orig).endRecord();
+        aon.value(list).endRecord();
+        aon.close();
+        AonReader reader = Aon.aonReader(out.toByteArray());
+        out.reset();
+        json = Aon.jsonWriter(out);
+        int count = 0;
+        while (Aon.transcode(reader, json)) {
+            json.endRecord();
+            count++;
+        }
+        json.close();
+        Assertions.assertEquals(2, count);
+        String lines = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(Aon.jsonString(orig) + '\n' + Aon.jsonString(list) + '\n', lines);
+        Assertions.assertFalse(Aon.transcode(Aon.jsonReader(new byte[0]), json));
+    }
+
     @Test
     public void testObjCompare() {
         Aobj neu = largeObj.copy();
@@ -40,6 +946,22 @@ public class SerializationTest {
         Assertions.assertNotEquals(largeObj, neu);
     }
 
+    private static String readKey(Areader reader) {
+        Assertions.assertEquals(Areader.Token.STRING, reader.next());
+        return reader.getString();
+    }
+
+    private static Areader[] skipReaders(byte[] aon, byte[] json, byte[] msgPack) {
+        return new Areader[]{
+                new AonReader(aon),
+                new AonReader(new ByteArrayInputStream(aon), 16),
+                new JsonReader(new ByteArrayInputStream(json)),
+                new JsonUtf8Reader(json),
+                new JsonUtf8Reader(new ByteArrayInputStream(json), 16),
+                new MsgPackReader(msgPack),
+                new MsgPackReader(new ByteArrayInputStream(msgPack))};
+    }
+
     static Aobj makeJsonObj() {
         Aobj primitiveObj = new Aobj()
                 .put("boolean", true)
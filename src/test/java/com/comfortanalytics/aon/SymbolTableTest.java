@@ -0,0 +1,118 @@
+package com.comfortanalytics.aon;
+
+import com.comfortanalytics.aon.io.AonReader;
+import com.comfortanalytics.aon.json.JsonReader;
+import com.comfortanalytics.aon.json.JsonUtf8Reader;
+import com.comfortanalytics.aon.msgpack.MsgPackReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Aaron Hansen
+ */
+public class SymbolTableTest {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Public Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testKeys() {
+        Alist list = makeRecords();
+        validateKeys(new AonReader(Aon.aonBytes(list)));
+        validateKeys(new JsonUtf8Reader(Aon.jsonBytes(list)));
+        validateKeys(new JsonReader(new StringReader(list.toString())));
+        validateKeys(new MsgPackReader(new ByteArrayInputStream(Aon.msgPackBytes(list))));
+    }
+
+    @Test
+    public void testSharedTable() {
+        byte[] bytes = Aon.jsonBytes(makeRecords());
+        SymbolTable table = new SymbolTable();
+        Alist first = ((AbstractReader) Aon.jsonReader(bytes)).setSymbolTable(table).getList();
+        Alist second = ((AbstractReader) Aon.jsonReader(bytes)).setSymbolTable(table).getList();
+        Assertions.assertSame(first.<Aobj>get(0).getFirst().getKey(),
+                              second.<Aobj>get(0).getFirst().getKey());
+        //disabled
+        first = ((AbstractReader) Aon.jsonReader(bytes)).setSymbolTable(null).getList();
+        second = ((AbstractReader) Aon.jsonReader(bytes)).setSymbolTable(null).getList();
+        Assertions.assertNotSame(first.<Aobj>get(0).getFirst().getKey(),
+                                 first.<Aobj>get(1).getFirst().getKey());
+        Assertions.assertEquals(first, second);
+    }
+
+    @Test
+    public void testTable() {
+        SymbolTable table = new SymbolTable(16);
+        byte[] bytes = "xx\u00e9key".getBytes(StandardCharsets.UTF_8);
+        String str = table.get(bytes, 2, bytes.length - 2);
+        Assertions.assertEquals("\u00e9key", str);
+        Assertions.assertSame(str, table.get(bytes.clone(), 2, bytes.length - 2));
+        char[] chars = "abc".toCharArray();
+        str = table.get(chars, 0, 3);
+        Assertions.assertSame(str, table.get("abc".toCharArray(), 0, 3));
+        Assertions.assertEquals("ab", table.get(chars, 0, 2));
+        //bounded, strings that collide replace each other
+        for (int i = 0; i < 1000; i++) {
+            chars = ("key" + i).toCharArray();
+            Assertions.assertEquals("key" + i, table.get(chars, 0, chars.length));
+        }
+        table.clear();
+        Assertions.assertNotSame(str, table.get("abc".toCharArray(), 0, 3));
+    }
+
+    @Test
+    public void testValues() {
+        byte[] bytes = Aon.aonBytes(makeRecords());
+        Alist list = new AonReader(bytes).getList();
+        Assertions.assertNotSame(list.<Aobj>get(0).getString("name"),
+                                 list.<Aobj>get(1).getString("name"));
+        list = new AonReader(bytes).setSymbolValues(true).getList();
+        Assertions.assertSame(list.<Aobj>get(0).getString("name"),
+                              list.<Aobj>get(1).getString("name"));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Package / Private Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Alist makeRecords() {
+        Alist list = new Alist();
+        for (int i = 0; i < 10; i++) {
+            Aobj obj = new Aobj()
+                    .put("id", i)
+                    .put("name", "sensor")
+                    .put("\u00e9tat", "ok");
+            obj.put("nested", new Aobj().put("list", new Alist().add("a").add(new Aobj()))
+                                        .put("after", true));
+            list.add(obj);
+        }
+        return list;
+    }
+
+    private void validateKeys(Areader reader) {
+        Alist list = reader.getList();
+        reader.close();
+        Aobj first = list.<Aobj>get(0);
+        for (int i = 1; i < list.size(); i++) {
+            Aobj obj = list.<Aobj>get(i);
+            Aobj.Member a = first.getFirst();
+            Aobj.Member b = obj.getFirst();
+            while (a != null) {
+                Assertions.assertSame(a.getKey(), b.getKey());
+                a = a.next();
+                b = b.next();
+            }
+            Assertions.assertSame(first.<Aobj>get("nested").getFirst().getKey(),
+                                  obj.<Aobj>get("nested").getFirst().getKey());
+            Assertions.assertSame(first.<Aobj>get("nested").getLast().getKey(),
+                                  obj.<Aobj>get("nested").getLast().getKey());
+        }
+        //values are not canonicalized by default
+        Assertions.assertNotSame(first.getString("name"), list.<Aobj>get(1).getString("name"));
+    }
+
+}